@@ -0,0 +1,37 @@
+package app.finwave.telegrambot.scenes;
+
+import app.finwave.api.tools.Transaction;
+import app.finwave.tat.utils.ComposedMessage;
+import app.finwave.telegrambot.utils.ClientState;
+import app.finwave.telegrambot.utils.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MainSceneViewsBenchmark {
+    @Param({"10", "100"})
+    public int accounts;
+
+    protected ClientState state;
+    protected List<Transaction> transactions;
+
+    @Setup
+    public void setup() {
+        state = new Fixtures.FakeClientState(Fixtures.snapshot(accounts));
+        transactions = Fixtures.transactions(state.getSnapshot(), 10);
+    }
+
+    @Benchmark
+    public ComposedMessage accountsView() {
+        return MainScene.buildAccountsView(state.getSnapshot(), 1, false);
+    }
+
+    @Benchmark
+    public ComposedMessage transactionsView() {
+        return MainScene.buildTransactionsView(state.getSnapshot(), transactions, false);
+    }
+}
@@ -0,0 +1,61 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.telegrambot.config.CommonConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ActionParserBenchmark {
+    @Param({"10", "100", "1000"})
+    public int accounts;
+
+    protected ActionParser parser;
+    protected ActionParser learnedParser;
+
+    @Setup
+    public void setup() {
+        ClientStateSnapshot snapshot = Fixtures.snapshot(accounts);
+        ClientState state = new Fixtures.FakeClientState(snapshot);
+
+        CategoryModel model = new CategoryModel(new CommonConfig.PredictionConfig());
+
+        for (int i = 0; i < 3; i++)
+            model.learn(List.of("кофе", "утром"), 1, 2);
+
+        parser = new ActionParser(state, null);
+        learnedParser = new ActionParser(state, model);
+
+        // name indexes are built lazily on first use, keep that out of the measurement
+        snapshot.getAccountsIndex();
+        snapshot.getCategoriesIndex();
+    }
+
+    @Benchmark
+    public Object matchedByName() {
+        return parser.parse("продукты 250,50 сбер карта", 1);
+    }
+
+    @Benchmark
+    public Object preferredAccount() {
+        return parser.parse("такси 300", 1);
+    }
+
+    @Benchmark
+    public Object unknownWords() {
+        return parser.parse("что-то непонятное 1000 совсем", 1);
+    }
+
+    @Benchmark
+    public Object learned() {
+        return learnedParser.parse("кофе утром 180", 1);
+    }
+
+    @Benchmark
+    public Object note() {
+        return parser.parse("!купить хлеб", 1);
+    }
+}
@@ -0,0 +1,83 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.AccountApi;
+import app.finwave.api.AccountFolderApi;
+import app.finwave.api.CurrencyApi;
+import app.finwave.api.TransactionCategoryApi;
+import app.finwave.api.tools.Transaction;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// deterministic synthetic chat state, so runs stay comparable between commits
+public class Fixtures {
+    protected static final String[] FOLDERS = {"Наличные", "Банк", "Вклады", "Инвестиции", "Кредиты"};
+    protected static final String[] ACCOUNTS = {"Кошелек", "Тинькофф карта", "Сбер", "Альфа", "Копилка", "Брокер", "Валюта"};
+    protected static final String[] CATEGORIES = {"Продукты", "Транспорт", "Кафе", "Аптека", "Связь", "Зарплата", "Подарки", "Одежда", "Такси"};
+    protected static final String[][] CURRENCIES = {{"RUB", "₽"}, {"USD", "$"}, {"EUR", "€"}};
+
+    public static class FakeClientState extends ClientState {
+        public FakeClientState(ClientStateSnapshot snapshot) {
+            restore(snapshot);
+        }
+    }
+
+    // one folder per ten accounts and as many categories as accounts
+    public static ClientStateSnapshot snapshot(int accounts) {
+        Random random = new Random(accounts);
+
+        ArrayList<AccountFolderApi.FolderEntry> folders = new ArrayList<>();
+        ArrayList<AccountApi.AccountEntry> accountEntries = new ArrayList<>();
+        ArrayList<TransactionCategoryApi.CategoryEntry> categories = new ArrayList<>();
+        ArrayList<CurrencyApi.CurrencyEntry> currencies = new ArrayList<>();
+
+        for (int i = 0; i < CURRENCIES.length; i++)
+            currencies.add(new CurrencyApi.CurrencyEntry(i + 1, 1, CURRENCIES[i][0], CURRENCIES[i][1], (short) 2, null));
+
+        int foldersCount = Math.max(1, accounts / 10);
+
+        for (int i = 0; i < foldersCount; i++)
+            folders.add(new AccountFolderApi.FolderEntry(i + 1, 1, nameOf(FOLDERS, i), null));
+
+        for (int i = 0; i < accounts; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextInt(10_000_000) - 1_000_000, 2);
+
+            accountEntries.add(new AccountApi.AccountEntry(i + 1, 1, i % foldersCount + 1, i % currencies.size() + 1,
+                    amount, i % 7 == 6, nameOf(ACCOUNTS, i), null));
+
+            categories.add(new TransactionCategoryApi.CategoryEntry(i + 1, 1, (short) (i % 5 == 0 ? 1 : -1), null,
+                    nameOf(CATEGORIES, i), null));
+        }
+
+        return ClientStateSnapshot.of(folders, accountEntries, categories, currencies);
+    }
+
+    public static List<Transaction> transactions(ClientStateSnapshot snapshot, int count) {
+        Random random = new Random(count);
+        List<AccountApi.AccountEntry> accounts = snapshot.getAccounts();
+        List<TransactionCategoryApi.CategoryEntry> categories = snapshot.getTransactionCategories();
+
+        ArrayList<Transaction> result = new ArrayList<>();
+        OffsetDateTime now = OffsetDateTime.now();
+
+        for (int i = 0; i < count; i++) {
+            AccountApi.AccountEntry account = accounts.get(random.nextInt(accounts.size()));
+            TransactionCategoryApi.CategoryEntry category = categories.get(random.nextInt(categories.size()));
+
+            result.add(new Transaction(i + 1, 1, category.categoryId(), account.accountId(), now.minusHours(i),
+                    BigDecimal.valueOf(random.nextInt(1_000_000) - 500_000, 2), i % 2 == 0 ? null : "описание " + i));
+        }
+
+        return result;
+    }
+
+    // names repeat with a numeric suffix past the word list, like real users' "Карта 2"
+    protected static String nameOf(String[] words, int index) {
+        String word = words[index % words.length];
+
+        return index < words.length ? word : word + " " + (index / words.length + 1);
+    }
+}
@@ -0,0 +1,42 @@
+package app.finwave.telegrambot.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FormatAmountBenchmark {
+    @Param({"12.5", "-1234567.89", "100000000000.01"})
+    public String amount;
+
+    protected ClientState state;
+    protected BigDecimal value;
+    protected StringBuilder out = new StringBuilder(32);
+
+    @Setup
+    public void setup() {
+        state = new Fixtures.FakeClientState(Fixtures.snapshot(10));
+        value = new BigDecimal(amount);
+    }
+
+    @Benchmark
+    public String string() {
+        return state.formatAmount(value, 1, true, false);
+    }
+
+    @Benchmark
+    public StringBuilder reusedBuilder() {
+        out.setLength(0);
+        state.getSnapshot().formatAmount(out, value, 1, true, false);
+
+        return out;
+    }
+
+    @Benchmark
+    public String hidden() {
+        return state.formatAmount(value, 1, true, true);
+    }
+}
@@ -0,0 +1,64 @@
+package app.finwave.telegrambot.utils;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// retained heap of one chat's state, measured by walking the object graph: ./gradlew footprint
+public class SnapshotFootprint {
+    public static void main(String[] args) {
+        System.out.printf("%8s %12s %14s %16s %14s%n", "accounts", "entries", "id indexes", "boxed hash maps", "snapshot");
+
+        for (int accounts : new int[] {10, 30, 100, 1000}) {
+            ClientStateSnapshot snapshot = Fixtures.snapshot(accounts);
+
+            // name indexes are part of what a chat keeps once it parsed a message
+            snapshot.getAccountsIndex();
+            snapshot.getCategoriesIndex();
+
+            Object[] entries = {
+                    snapshot.getAccountFolders(),
+                    snapshot.getAccounts(),
+                    snapshot.getTransactionCategories(),
+                    snapshot.getCurrencies()
+            };
+
+            Object[] indexes = {
+                    snapshot.getAccountFoldersMap(),
+                    snapshot.getAccountsMap(),
+                    snapshot.getTransactionCategoriesMap(),
+                    snapshot.getCurrenciesMap()
+            };
+
+            // what the same indexes cost as HashMap<Long, ...>, the layout before LongIndex
+            Object[] hashMaps = {
+                    hashMap(snapshot.getAccountFolders(), (f) -> f.folderId()),
+                    hashMap(snapshot.getAccounts(), (a) -> a.accountId()),
+                    hashMap(snapshot.getTransactionCategories(), (c) -> c.categoryId()),
+                    hashMap(snapshot.getCurrencies(), (c) -> c.currencyId())
+            };
+
+            long entriesSize = GraphLayout.parseInstance(entries).totalSize();
+
+            System.out.printf("%8d %12d %14d %16d %14d%n",
+                    accounts,
+                    entriesSize,
+                    GraphLayout.parseInstance(entries, indexes).totalSize() - entriesSize,
+                    GraphLayout.parseInstance(entries, hashMaps).totalSize() - entriesSize,
+                    GraphLayout.parseInstance(snapshot).totalSize()
+            );
+        }
+    }
+
+    protected static <T> Map<Long, T> hashMap(List<T> list, ToLongFunction<T> idGetter) {
+        HashMap<Long, T> result = new HashMap<>();
+
+        for (T entry : list)
+            result.put(idGetter.applyAsLong(entry), entry);
+
+        return result;
+    }
+}
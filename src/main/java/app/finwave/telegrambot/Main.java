@@ -1,18 +1,25 @@
 package app.finwave.telegrambot;
 
 import app.finwave.tat.BotCore;
+import app.finwave.telegrambot.api.ApiClients;
+import app.finwave.telegrambot.cluster.LeaseManager;
+import app.finwave.telegrambot.cluster.UpdateRouter;
 import app.finwave.telegrambot.config.ConfigWorker;
 import app.finwave.telegrambot.database.DatabaseWorker;
 import app.finwave.telegrambot.handlers.ChatHandler;
 import app.finwave.telegrambot.handlers.GlobalHandler;
 import app.finwave.telegrambot.handlers.UserHandler;
 import app.finwave.telegrambot.logging.LogsInitializer;
+import app.finwave.telegrambot.utils.ClientStateStore;
+import app.finwave.telegrambot.utils.ServerConfigsCache;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class Main {
     protected static Injector INJ;
@@ -21,6 +28,8 @@ public class Main {
     protected static String botToken;
 
     public static void main(String[] args) throws IOException {
+        long startTime = System.currentTimeMillis();
+
         ConfigWorker configWorker = new ConfigWorker();
         botToken = configWorker.telegram.apiToken;
 
@@ -35,13 +44,39 @@ public class Main {
         log = LoggerFactory.getLogger(Main.class);
 
         DatabaseWorker databaseWorker = INJ.getInstance(DatabaseWorker.class);
+        LeaseManager leaseManager = INJ.getInstance(LeaseManager.class);
+        UpdateRouter updateRouter = INJ.getInstance(UpdateRouter.class);
+        ApiClients apiClients = INJ.getInstance(ApiClients.class);
+        ServerConfigsCache configsCache = INJ.getInstance(ServerConfigsCache.class);
+        ClientStateStore stateStore = INJ.getInstance(ClientStateStore.class);
+
+        ConcurrentHashMap<Long, ChatHandler> chatHandlers = new ConcurrentHashMap<>();
+
+        // routed updates and acquired partitions may reach a chat before telegram does, they share one handler
+        Function<Long, ChatHandler> handlerOf = (chatId) -> chatHandlers.computeIfAbsent(chatId, (id) ->
+                new ChatHandler(core, databaseWorker, leaseManager, updateRouter, apiClients, configsCache, stateStore, configWorker.commonConfig, id)
+        );
+
+        // handlers only queue the work, hydration and release run on each chat's own executor
+        leaseManager.setOwnershipListener((acquired, lost) -> {
+            chatHandlers.values().stream()
+                    .filter((handler) -> lost.contains(leaseManager.partitionOf(handler.getChatId())))
+                    .forEach(ChatHandler::release);
+
+            leaseManager.chatsIn(acquired).forEach((chatId) -> handlerOf.apply(chatId).acquire());
+        });
+
+        // partitions taken by the first heartbeat, before the listener was set
+        leaseManager.chatsIn(leaseManager.getOwnedPartitions()).forEach((chatId) -> handlerOf.apply(chatId).acquire());
+
+        updateRouter.setReceiver((chatId, update) -> handlerOf.apply(chatId).handleUpdate(update));
 
         core.setHandlers(new GlobalHandler(core),
-                chatId -> new ChatHandler(core, databaseWorker, configWorker.commonConfig, chatId),
+                handlerOf,
                 userId -> new UserHandler(core, userId)
         );
 
-        log.info("Bot started");
+        log.info("Bot started in {} ms", System.currentTimeMillis() - startTime);
     }
 
     public static String getBotToken() {
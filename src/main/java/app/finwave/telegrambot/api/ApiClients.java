@@ -0,0 +1,59 @@
+package app.finwave.telegrambot.api;
+
+import app.finwave.api.FinWaveClient;
+import app.finwave.telegrambot.config.ApiConfig;
+import app.finwave.telegrambot.config.ConfigWorker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Singleton
+public class ApiClients {
+    protected ApiConfig config;
+    protected ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Inject
+    public ApiClients(ConfigWorker configWorker) {
+        this.config = configWorker.api;
+    }
+
+    public FinWaveClient create(String apiUrl) {
+        return new LimitedFinWaveClient(config, limiterOf(apiUrl), apiUrl);
+    }
+
+    public FinWaveClient create(String apiUrl, String session) {
+        return new LimitedFinWaveClient(config, limiterOf(apiUrl), apiUrl, session);
+    }
+
+    protected ConcurrencyLimiter limiterOf(String apiUrl) {
+        if (!config.limiter.enabled)
+            return null;
+
+        return limiters.computeIfAbsent(hostOf(apiUrl), (host) -> new ConcurrencyLimiter(host, config.limiter));
+    }
+
+    // one bulkhead per server, several api urls of the same host share it
+    protected static String hostOf(String apiUrl) {
+        try {
+            URI uri = URI.create(apiUrl);
+
+            if (uri.getHost() != null)
+                return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        } catch (IllegalArgumentException ignored) { }
+
+        return apiUrl;
+    }
+
+    public ApiConfig getConfig() {
+        return config;
+    }
+
+    public Map<String, ConcurrencyLimiter.Stats> getStats() {
+        return limiters.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, (e) -> e.getValue().stats()));
+    }
+}
@@ -0,0 +1,210 @@
+package app.finwave.telegrambot.api;
+
+import app.finwave.api.tools.ApiException;
+import app.finwave.telegrambot.config.ApiConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class ConcurrencyLimiter {
+    protected static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "api-limiter-timeouts");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    protected final String name;
+    protected final ApiConfig.LimiterConfig config;
+
+    protected double limit;
+    protected int inFlight;
+    protected final ArrayDeque<Pending<?>> queue = new ArrayDeque<>();
+
+    protected final LongAdder started = new LongAdder();
+    protected final LongAdder completed = new LongAdder();
+    protected final LongAdder overloads = new LongAdder();
+    protected final LongAdder rejected = new LongAdder();
+    protected final LongAdder expired = new LongAdder();
+    protected final LongAdder queued = new LongAdder();
+    protected final LongAdder queueNanos = new LongAdder();
+    protected final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+    public ConcurrencyLimiter(String name, ApiConfig.LimiterConfig config) {
+        this.name = name;
+        this.config = config;
+        this.limit = config.initialLimit;
+    }
+
+    protected static class Pending<T> {
+        protected final Supplier<CompletableFuture<T>> call;
+        protected final CompletableFuture<T> result = new CompletableFuture<>();
+        protected final AtomicBoolean claimed = new AtomicBoolean();
+        protected final long enqueuedAt = System.nanoTime();
+
+        // why the caller gave up on a started request, if it did
+        protected volatile Throwable abandonedBy;
+
+        protected Pending(Supplier<CompletableFuture<T>> call) {
+            this.call = call;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        Pending<T> pending = new Pending<>(call);
+
+        synchronized (this) {
+            if (inFlight < (int) limit && queue.isEmpty()) {
+                inFlight++;
+                pending.claimed.set(true);
+            } else if (queue.size() >= config.maxQueue) {
+                rejected.increment();
+
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Too many queued requests to " + name));
+            } else {
+                queue.add(pending);
+                queued.increment();
+            }
+        }
+
+        if (pending.claimed.get()) {
+            start(pending);
+
+            return pending.result;
+        }
+
+        timeouts.schedule(() -> expire(pending), config.queueTimeout, TimeUnit.MILLISECONDS);
+
+        // a caller giving up while still queued frees its place
+        pending.result.whenComplete((r, t) -> {
+            if (pending.claimed.compareAndSet(false, true)) {
+                synchronized (this) {
+                    queue.remove(pending);
+                }
+            }
+        });
+
+        return pending.result;
+    }
+
+    protected void expire(Pending<?> pending) {
+        if (!pending.claimed.compareAndSet(false, true))
+            return;
+
+        synchronized (this) {
+            queue.remove(pending);
+        }
+
+        expired.increment();
+        pending.result.completeExceptionally(new RejectedExecutionException("Queue deadline exceeded for " + name));
+    }
+
+    protected <T> void start(Pending<T> pending) {
+        long waited = System.nanoTime() - pending.enqueuedAt;
+        started.increment();
+        queueNanos.add(waited);
+        maxQueueNanos.accumulate(waited);
+
+        CompletableFuture<T> future;
+
+        try {
+            future = pending.call.get();
+        } catch (Throwable t) {
+            future = CompletableFuture.failedFuture(t);
+        }
+
+        // the caller gave up (deadline or cancellation), don't keep the request running for nobody
+        CompletableFuture<T> started = future;
+        pending.result.whenComplete((r, t) -> {
+            if (t == null)
+                return;
+
+            pending.abandonedBy = t;
+            started.cancel(true);
+        });
+
+        future.whenComplete((r, t) -> {
+            // judge an abandoned request by the caller's reason, not by the cancellation it caused
+            Throwable abandonedBy = pending.abandonedBy;
+            release(abandonedBy != null ? abandonedBy : t);
+
+            if (t != null) {
+                pending.result.completeExceptionally(t);
+            } else {
+                pending.result.complete(r);
+            }
+        });
+    }
+
+    protected static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null)
+            t = t.getCause();
+
+        return t;
+    }
+
+    // api errors mean the server answered, only transport failures and timeouts signal overload
+    protected boolean isOverload(Throwable t) {
+        return !(unwrap(t) instanceof ApiException);
+    }
+
+    protected void release(Throwable failure) {
+        // the user moved on, that says nothing about the server either way
+        boolean cancelled = failure != null && unwrap(failure) instanceof CancellationException;
+        boolean overload = failure != null && !cancelled && isOverload(failure);
+
+        ArrayList<Pending<?>> toStart = new ArrayList<>();
+
+        synchronized (this) {
+            inFlight--;
+            completed.increment();
+
+            if (overload) {
+                overloads.increment();
+                limit = Math.max(config.minLimit, limit * config.backoffRatio);
+            } else if (!cancelled) {
+                limit = Math.min(config.maxLimit, limit + 1 / limit);
+            }
+
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                Pending<?> next = queue.poll();
+
+                if (!next.claimed.compareAndSet(false, true))
+                    continue;
+
+                inFlight++;
+                toStart.add(next);
+            }
+        }
+
+        toStart.forEach(this::start);
+    }
+
+    public record Stats(int limit, int inFlight, int queueSize, long queued, long completed, long overloads, long rejected, long expired, double averageQueueMillis, double maxQueueMillis) {}
+
+    public synchronized Stats stats() {
+        long startedCount = started.sum();
+
+        return new Stats(
+                (int) limit,
+                inFlight,
+                queue.size(),
+                queued.sum(),
+                completed.sum(),
+                overloads.sum(),
+                rejected.sum(),
+                expired.sum(),
+                startedCount == 0 ? 0 : queueNanos.sum() / 1e6 / startedCount,
+                maxQueueNanos.get() / 1e6
+        );
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,50 @@
+package app.finwave.telegrambot.api;
+
+import app.finwave.api.FinWaveClient;
+import app.finwave.api.tools.IRequest;
+import app.finwave.telegrambot.config.ApiConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LimitedFinWaveClient extends FinWaveClient {
+    protected ApiConfig config;
+    protected ConcurrencyLimiter limiter;
+
+    public LimitedFinWaveClient(ApiConfig config, ConcurrencyLimiter limiter, String apiUrl) {
+        super(apiUrl);
+
+        this.config = config;
+        this.limiter = limiter;
+    }
+
+    public LimitedFinWaveClient(ApiConfig config, ConcurrencyLimiter limiter, String apiUrl, String token) {
+        super(apiUrl, token, config.connectTimeout, config.requestTimeout);
+
+        this.config = config;
+        this.limiter = limiter;
+    }
+
+    public int deadlineOf(IRequest<?> request) {
+        return config.deadlines.getOrDefault(request.getClass().getSimpleName(), config.requestTimeout);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runRequest(IRequest<T> request) {
+        return runRequest(request, config.connectTimeout, deadlineOf(request));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> runRequest(IRequest<T> request, int connectTimeout, int requestTimeout) {
+        CompletableFuture<T> future = limiter == null ?
+                super.runRequest(request, connectTimeout, requestTimeout) :
+                limiter.submit(() -> super.runRequest(request, connectTimeout, requestTimeout));
+
+        // the http timeout does not cover time spent waiting in the limiter queue, the deadline does
+        return future.orTimeout(requestTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+}
@@ -0,0 +1,71 @@
+package app.finwave.telegrambot.api;
+
+import app.finwave.api.FinWaveClient;
+import app.finwave.api.tools.IRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// keeps up to `concurrency` requests of a batch in flight, the next one goes out as soon as any completes
+public class RequestPipeline {
+    protected FinWaveClient client;
+    protected List<? extends IRequest<?>> requests;
+    protected int concurrency;
+
+    protected List<Throwable> errors;
+    protected AtomicInteger next = new AtomicInteger();
+    protected AtomicInteger remaining;
+    protected CompletableFuture<List<Throwable>> result = new CompletableFuture<>();
+
+    protected RequestPipeline(FinWaveClient client, List<? extends IRequest<?>> requests, int concurrency) {
+        this.client = client;
+        this.requests = requests;
+        this.concurrency = Math.max(1, concurrency);
+        this.errors = Collections.synchronizedList(new ArrayList<>(Collections.nCopies(requests.size(), null)));
+        this.remaining = new AtomicInteger(requests.size());
+    }
+
+    // completes when every request has, errors are in request order with null for succeeded ones
+    public static CompletableFuture<List<Throwable>> run(FinWaveClient client, List<? extends IRequest<?>> requests, int concurrency) {
+        if (requests.isEmpty())
+            return CompletableFuture.completedFuture(List.of());
+
+        RequestPipeline pipeline = new RequestPipeline(client, requests, concurrency);
+
+        for (int i = 0; i < Math.min(pipeline.concurrency, requests.size()); i++)
+            pipeline.sendNext();
+
+        return pipeline.result;
+    }
+
+    protected void sendNext() {
+        int index = next.getAndIncrement();
+
+        if (index >= requests.size())
+            return;
+
+        CompletableFuture<?> future;
+
+        try {
+            future = client.runRequest(requests.get(index));
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((r, t) -> {
+            if (t != null)
+                errors.set(index, t);
+
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(new ArrayList<>(errors));
+
+                return;
+            }
+
+            sendNext();
+        });
+    }
+}
@@ -0,0 +1,238 @@
+package app.finwave.telegrambot.cluster;
+
+import app.finwave.telegrambot.config.ClusterConfig;
+import app.finwave.telegrambot.config.ConfigWorker;
+import app.finwave.telegrambot.database.DatabaseWorker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static app.finwave.telegrambot.jooq.Tables.CHATS;
+import static app.finwave.telegrambot.jooq.Tables.CHAT_LEASES;
+import static app.finwave.telegrambot.jooq.Tables.CLUSTER_NODES;
+
+@Singleton
+public class LeaseManager {
+    protected static final Logger log = LoggerFactory.getLogger(LeaseManager.class);
+
+    protected static final OffsetDateTime EXPIRED = OffsetDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC);
+
+    protected ClusterConfig config;
+    protected DSLContext context;
+    protected String nodeId;
+
+    protected volatile Set<Integer> ownedPartitions = Set.of();
+    protected long lastRenewal;
+    protected BiConsumer<Set<Integer>, Set<Integer>> ownershipListener = (acquired, lost) -> {};
+
+    protected ScheduledExecutorService executor;
+
+    @Inject
+    public LeaseManager(ConfigWorker configWorker, DatabaseWorker databaseWorker) {
+        this.config = configWorker.cluster;
+        this.context = databaseWorker.getDefaultContext();
+
+        if (!config.enabled)
+            return;
+
+        if (context == null) {
+            log.warn("Cluster mode requires postgres storage, running as a single node");
+            config.enabled = false;
+
+            return;
+        }
+
+        this.nodeId = config.nodeId.isBlank() ? defaultNodeId() : config.nodeId;
+
+        context.insertInto(CHAT_LEASES, CHAT_LEASES.PARTITION_ID, CHAT_LEASES.EXPIRES_AT)
+                .select(DSL.select(DSL.field("p", Integer.class), DSL.val(EXPIRED))
+                        .from(DSL.generateSeries(0, config.partitions - 1).as("s", "p")))
+                .onConflictDoNothing()
+                .execute();
+
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "lease-heartbeat");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        heartbeat();
+        executor.scheduleWithFixedDelay(this::heartbeat, config.heartbeatInterval, config.heartbeatInterval, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::releaseAll));
+
+        log.info("Cluster node {} owns {} of {} partitions", nodeId, ownedPartitions.size(), config.partitions);
+    }
+
+    protected static String defaultNodeId() {
+        String host;
+
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public void setOwnershipListener(BiConsumer<Set<Integer>, Set<Integer>> ownershipListener) {
+        this.ownershipListener = ownershipListener;
+    }
+
+    public int partitionOf(long chatId) {
+        return (int) Math.floorMod(chatId, (long) config.partitions);
+    }
+
+    public boolean owns(long chatId) {
+        return !config.enabled || ownedPartitions.contains(partitionOf(chatId));
+    }
+
+    public Set<Integer> getOwnedPartitions() {
+        return ownedPartitions;
+    }
+
+    // group chat ids are negative, so the modulo is normalized the same way partitionOf does it
+    public List<Long> chatsIn(Set<Integer> partitions) {
+        if (partitions.isEmpty())
+            return List.of();
+
+        return context.select(CHATS.ID)
+                .from(CHATS)
+                .where(CHATS.ID.mod((long) config.partitions).plus((long) config.partitions).mod((long) config.partitions).in(
+                        partitions.stream().map(Integer::longValue).toList()
+                ))
+                .fetch(CHATS.ID);
+    }
+
+    protected synchronized void heartbeat() {
+        Set<Integer> previous = ownedPartitions;
+        Set<Integer> owned;
+
+        try {
+            // every node compares leases against the database clock, local clocks may be skewed
+            OffsetDateTime now = context.select(DSL.currentOffsetDateTime()).fetchOne(0, OffsetDateTime.class);
+            OffsetDateTime expiresAt = now.plus(config.leaseDuration, ChronoUnit.MILLIS);
+            OffsetDateTime aliveAfter = now.minus(config.leaseDuration, ChronoUnit.MILLIS);
+
+            // membership is separate from leases, so a node that holds nothing yet still counts
+            context.insertInto(CLUSTER_NODES, CLUSTER_NODES.NODE_ID, CLUSTER_NODES.LAST_SEEN)
+                    .values(nodeId, now)
+                    .onConflict(CLUSTER_NODES.NODE_ID)
+                    .doUpdate()
+                    .set(CLUSTER_NODES.LAST_SEEN, now)
+                    .execute();
+
+            context.deleteFrom(CLUSTER_NODES)
+                    .where(CLUSTER_NODES.LAST_SEEN.lt(now.minus(config.leaseDuration * 10, ChronoUnit.MILLIS)))
+                    .execute();
+
+            owned = new HashSet<>(context.update(CHAT_LEASES)
+                    .set(CHAT_LEASES.EXPIRES_AT, expiresAt)
+                    .where(CHAT_LEASES.OWNER.eq(nodeId))
+                    .returning(CHAT_LEASES.PARTITION_ID)
+                    .fetch(CHAT_LEASES.PARTITION_ID));
+
+            int nodes = Math.max(1, context.fetchCount(CLUSTER_NODES, CLUSTER_NODES.LAST_SEEN.gt(aliveAfter)));
+            int fairShare = (config.partitions + nodes - 1) / nodes;
+
+            if (owned.size() < fairShare) {
+                owned.addAll(context.update(CHAT_LEASES)
+                        .set(CHAT_LEASES.OWNER, nodeId)
+                        .set(CHAT_LEASES.EXPIRES_AT, expiresAt)
+                        .where(CHAT_LEASES.PARTITION_ID.in(
+                                DSL.select(CHAT_LEASES.PARTITION_ID)
+                                        .from(CHAT_LEASES)
+                                        .where(CHAT_LEASES.EXPIRES_AT.le(now))
+                                        .orderBy(CHAT_LEASES.PARTITION_ID)
+                                        .limit(fairShare - owned.size())
+                                        .forUpdate()
+                                        .skipLocked()
+                        ))
+                        .returning(CHAT_LEASES.PARTITION_ID)
+                        .fetch(CHAT_LEASES.PARTITION_ID));
+            } else if (owned.size() > fairShare) {
+                Set<Integer> excess = owned.stream()
+                        .sorted()
+                        .skip(fairShare)
+                        .collect(Collectors.toSet());
+
+                release(excess);
+                owned.removeAll(excess);
+            }
+            lastRenewal = System.currentTimeMillis();
+        } catch (Exception e) {
+            log.warn("Lease heartbeat failed", e);
+
+            // keep serving until our leases could have expired and been taken over by another node
+            if (System.currentTimeMillis() - lastRenewal < config.leaseDuration - config.heartbeatInterval)
+                return;
+
+            owned = new HashSet<>();
+        }
+
+        Set<Integer> current = Set.copyOf(owned);
+        ownedPartitions = current;
+
+        Set<Integer> acquired = current.stream().filter((p) -> !previous.contains(p)).collect(Collectors.toSet());
+        Set<Integer> lost = previous.stream().filter((p) -> !current.contains(p)).collect(Collectors.toSet());
+
+        if (!acquired.isEmpty() || !lost.isEmpty()) {
+            log.info("Partitions acquired: {}, lost: {}", acquired, lost);
+
+            try {
+                ownershipListener.accept(acquired, lost);
+            } catch (Exception e) {
+                log.warn("Ownership listener failed", e);
+            }
+        }
+    }
+
+    protected void release(Set<Integer> partitions) {
+        if (partitions.isEmpty())
+            return;
+
+        context.update(CHAT_LEASES)
+                .setNull(CHAT_LEASES.OWNER)
+                .set(CHAT_LEASES.EXPIRES_AT, EXPIRED)
+                .where(CHAT_LEASES.OWNER.eq(nodeId))
+                .and(CHAT_LEASES.PARTITION_ID.in(partitions))
+                .execute();
+    }
+
+    protected synchronized void releaseAll() {
+        executor.shutdownNow();
+
+        try {
+            release(ownedPartitions);
+
+            context.deleteFrom(CLUSTER_NODES)
+                    .where(CLUSTER_NODES.NODE_ID.eq(nodeId))
+                    .execute();
+        } catch (Exception e) {
+            log.warn("Failed to release leases", e);
+        }
+
+        ownedPartitions = Set.of();
+    }
+}
@@ -0,0 +1,114 @@
+package app.finwave.telegrambot.cluster;
+
+import app.finwave.telegrambot.config.ClusterConfig;
+import app.finwave.telegrambot.config.ConfigWorker;
+import app.finwave.telegrambot.database.DatabaseWorker;
+import app.finwave.telegrambot.jooq.tables.records.RoutedUpdatesRecord;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.utils.BotUtils;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static app.finwave.telegrambot.jooq.Tables.ROUTED_UPDATES;
+
+// hands updates over to the node owning the chat, the database is the only channel all nodes share
+@Singleton
+public class UpdateRouter {
+    protected static final Logger log = LoggerFactory.getLogger(UpdateRouter.class);
+
+    protected static final int DRAIN_BATCH = 100;
+
+    protected ClusterConfig config;
+    protected DSLContext context;
+    protected LeaseManager leaseManager;
+
+    protected Gson gson = new Gson();
+    protected BiConsumer<Long, Update> receiver = (chatId, update) -> {};
+
+    protected ScheduledExecutorService executor;
+
+    @Inject
+    public UpdateRouter(ConfigWorker configWorker, DatabaseWorker databaseWorker, LeaseManager leaseManager) {
+        this.config = configWorker.cluster;
+        this.context = databaseWorker.getDefaultContext();
+        this.leaseManager = leaseManager;
+
+        // LeaseManager turns cluster mode off when there is no postgres
+        if (!config.enabled)
+            return;
+
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "update-router");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(this::drain, config.routePollInterval, config.routePollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void setReceiver(BiConsumer<Long, Update> receiver) {
+        this.receiver = receiver;
+    }
+
+    public void route(long chatId, Update update) {
+        context.insertInto(ROUTED_UPDATES, ROUTED_UPDATES.PARTITION_ID, ROUTED_UPDATES.CHAT_ID, ROUTED_UPDATES.PAYLOAD)
+                .values(leaseManager.partitionOf(chatId), chatId, gson.toJson(update))
+                .execute();
+    }
+
+    protected void drain() {
+        Set<Integer> owned = leaseManager.getOwnedPartitions();
+
+        if (owned.isEmpty())
+            return;
+
+        try {
+            OffsetDateTime now = context.select(DSL.currentOffsetDateTime()).fetchOne(0, OffsetDateTime.class);
+
+            int expired = context.deleteFrom(ROUTED_UPDATES)
+                    .where(ROUTED_UPDATES.CREATED_AT.lt(now.minus(config.routedUpdateTtl, ChronoUnit.MILLIS)))
+                    .execute();
+
+            if (expired > 0)
+                log.warn("Dropped {} routed updates nobody picked up in time", expired);
+
+            List<RoutedUpdatesRecord> routed;
+
+            do {
+                routed = context.deleteFrom(ROUTED_UPDATES)
+                        .where(ROUTED_UPDATES.ID.in(
+                                DSL.select(ROUTED_UPDATES.ID)
+                                        .from(ROUTED_UPDATES)
+                                        .where(ROUTED_UPDATES.PARTITION_ID.in(owned))
+                                        .orderBy(ROUTED_UPDATES.ID)
+                                        .limit(DRAIN_BATCH)
+                                        .forUpdate()
+                                        .skipLocked()
+                        ))
+                        .returning()
+                        .fetch()
+                        .sortAsc(ROUTED_UPDATES.ID);
+
+                for (RoutedUpdatesRecord record : routed)
+                    receiver.accept(record.getChatId(), BotUtils.parseUpdate(record.getPayload()));
+            } while (routed.size() == DRAIN_BATCH);
+        } catch (Exception e) {
+            log.warn("Failed to drain routed updates", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package app.finwave.telegrambot.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ApiConfig {
+    public int connectTimeout = 5 * 1000;
+    public int requestTimeout = 5 * 1000;
+
+    // per request type (simple class name) overrides of requestTimeout, queueing included
+    public HashMap<String, Integer> deadlines = new HashMap<>(Map.of(
+            "AskRequest", 2 * 60 * 1000,
+            "NewContextRequest", 15 * 1000,
+            "UploadFromURLRequest", 60 * 1000,
+            "AttachFileRequest", 60 * 1000
+    ));
+
+    // budget of one user interaction (a message and everything it triggers)
+    public long interactionDeadline = 3 * 60 * 1000;
+
+    // multi-line messages: lines taken as separate transactions and how many of them are sent at once
+    public int maxBatchLines = 20;
+    public int batchConcurrency = 4;
+
+    public LimiterConfig limiter = new LimiterConfig();
+
+    public static class LimiterConfig {
+        public boolean enabled = true;
+
+        public int initialLimit = 8;
+        public int minLimit = 1;
+        public int maxLimit = 64;
+        public double backoffRatio = 0.5;
+
+        public int maxQueue = 256;
+        public long queueTimeout = 10 * 1000;
+    }
+}
@@ -0,0 +1,13 @@
+package app.finwave.telegrambot.config;
+
+public class ClusterConfig {
+    public boolean enabled = false;
+    public String nodeId = "";
+
+    public int partitions = 64;
+    public long leaseDuration = 30 * 1000;
+    public long heartbeatInterval = 10 * 1000;
+
+    public long routePollInterval = 250;
+    public long routedUpdateTtl = 5 * 60 * 1000;
+}
@@ -4,4 +4,49 @@ public class CommonConfig {
     public String defaultApiUrl = "https://demo.finwave.app/api/";
     public String defaultUrlName = "Демо-сервер";
     public boolean allowCustomUrl = true;
+
+    public ServerCacheConfig serverCache = new ServerCacheConfig();
+    public UpdatesConfig updates = new UpdatesConfig();
+    public RefreshConfig refresh = new RefreshConfig();
+    public StateSnapshotsConfig stateSnapshots = new StateSnapshotsConfig();
+    public PredictionConfig prediction = new PredictionConfig();
+
+    public static class ServerCacheConfig {
+        public int maxServers = 256;
+
+        public long ttl = 60 * 60 * 1000;
+        public long refreshAfter = 10 * 60 * 1000;
+        public long requestTimeout = 5 * 1000;
+        public long failureTtl = 30 * 1000;
+    }
+
+    public static class UpdatesConfig {
+        public long quietWindow = 500;
+        public long maxDelay = 3 * 1000;
+        public int threads = 2;
+    }
+
+    public static class StateSnapshotsConfig {
+        public boolean enabled = true;
+        public String path = "data/states";
+        public long maxAge = 7 * 24 * 60 * 60 * 1000L;
+    }
+
+    public static class RefreshConfig {
+        public long staleAfter = 30 * 60 * 1000;
+        public long jitter = 5 * 60 * 1000;
+    }
+
+    public static class PredictionConfig {
+        public boolean enabled = true;
+
+        public int maxWords = 512;
+        public int maxCandidates = 4;
+
+        // learned pair is used without matching names at or above this
+        public double minConfidence = 0.6;
+
+        // explicit account or category names matching at or above this win over the learned pair
+        public double nameOverride = 0.25;
+    }
 }
@@ -11,6 +11,8 @@ public class ConfigWorker {
     public final TelegramConfig telegram;
     public final CommonConfig commonConfig;
     public final LoggingConfig loggingConfig;
+    public final ClusterConfig cluster;
+    public final ApiConfig api;
 
     protected final RootConfig main;
 
@@ -22,5 +24,7 @@ public class ConfigWorker {
         telegram = main.subNode("telegram").getOrSetAs(TelegramConfig.class, TelegramConfig::new);
         commonConfig = main.subNode("common").getOrSetAs(CommonConfig.class, CommonConfig::new);
         loggingConfig = main.subNode("logging").getOrSetAs(LoggingConfig.class, LoggingConfig::new);
+        cluster = main.subNode("cluster").getOrSetAs(ClusterConfig.class, ClusterConfig::new);
+        api = main.subNode("api").getOrSetAs(ApiConfig.class, ApiConfig::new);
     }
 }
@@ -3,9 +3,42 @@ package app.finwave.telegrambot.config;
 import java.util.Optional;
 
 public class DatabaseConfig {
+    public String storage = "postgres";
+    public String embeddedPath = "data/chats.db";
+
     public String url = "jdbc:postgresql://postgres:5432/finwavebot";
     public String user = "finwavebot";
     public String password = Optional
             .ofNullable(System.getenv("DATABASE_PASSWORD"))
             .orElse("change_me");
+
+    public boolean fastStart = true;
+    public long slowQueryThreshold = 200;
+
+    public PoolConfig pool = new PoolConfig();
+    public WriteBehindConfig writeBehind = new WriteBehindConfig();
+    public CacheConfig cache = new CacheConfig();
+
+    public static class PoolConfig {
+        public int maxPoolSize = 10;
+        public int minIdle = 2;
+
+        public long connectionTimeout = 10 * 1000;
+        public long validationTimeout = 3 * 1000;
+        public long idleTimeout = 5 * 60 * 1000;
+        public long keepaliveTime = 60 * 1000;
+        public long maxLifetime = 30 * 60 * 1000;
+    }
+
+    public static class WriteBehindConfig {
+        public long flushInterval = 5 * 1000;
+        public int flushThreshold = 256;
+    }
+
+    public static class CacheConfig {
+        public int maxRecords = 10000;
+
+        public boolean warmUp = true;
+        public int warmUpFetchSize = 500;
+    }
 }
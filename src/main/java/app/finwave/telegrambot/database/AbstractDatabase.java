@@ -1,12 +1,14 @@
 package app.finwave.telegrambot.database;
 
-import org.jooq.DSLContext;
+import app.finwave.telegrambot.database.storage.ChatStorage;
 
 public abstract class AbstractDatabase {
-    protected DSLContext context;
+    protected ChatStorage storage;
+    protected ChatRecordsCache cache;
 
-    public AbstractDatabase(DSLContext context) {
-        this.context = context;
+    public AbstractDatabase(ChatStorage storage, ChatRecordsCache cache) {
+        this.storage = storage;
+        this.cache = cache;
     }
 
 }
@@ -1,45 +1,34 @@
 package app.finwave.telegrambot.database;
 
-import app.finwave.telegrambot.jooq.tables.Chats;
+import app.finwave.telegrambot.database.storage.ChatStorage;
 import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
-import org.jooq.DSLContext;
 
+import java.util.Map;
 import java.util.Optional;
 
-import static app.finwave.telegrambot.jooq.tables.Chats.CHATS;
-
 public class ChatDatabase extends AbstractDatabase {
-    public ChatDatabase(DSLContext context) {
-        super(context);
+    public ChatDatabase(ChatStorage storage, ChatRecordsCache cache) {
+        super(storage, cache);
     }
 
     public void registerChat(long chatId, String apiUrl, String session, short type, int lastMessage) {
-        context.insertInto(CHATS)
-                .set(CHATS.ID, chatId)
-                .set(CHATS.API_URL, apiUrl)
-                .set(CHATS.API_SESSION, session)
-                .set(CHATS.TYPE, type)
-                .set(CHATS.LAST_MESSAGE, lastMessage)
-                .onConflict(CHATS.ID)
-                .doUpdate()
-                .set(CHATS.API_URL, apiUrl)
-                .set(CHATS.API_SESSION, session)
-                .set(CHATS.TYPE, type)
-                .set(CHATS.LAST_MESSAGE, lastMessage)
-                .where(CHATS.ID.eq(chatId))
-                .execute();
+        cache.putChat(storage.registerChat(chatId, apiUrl, session, type, lastMessage));
     }
 
     public Optional<ChatsRecord> getChat(long chatId) {
-        return context.selectFrom(CHATS)
-                .where(CHATS.ID.eq(chatId))
-                .fetchOptional();
+        return cache.getChat(chatId, () -> storage.getChat(chatId));
     }
 
     public void updateLastMessage(long chatId, int lastMessage) {
-        context.update(CHATS)
-                .set(CHATS.LAST_MESSAGE, lastMessage)
-                .where(CHATS.ID.eq(chatId))
-                .execute();
+        storage.updateLastMessages(Map.of(chatId, lastMessage));
+
+        cache.updateLastMessage(chatId, lastMessage);
+    }
+
+    public void updateLastMessages(Map<Long, Integer> lastMessages) {
+        if (lastMessages.isEmpty())
+            return;
+
+        storage.updateLastMessages(lastMessages);
     }
 }
@@ -1,80 +1,108 @@
 package app.finwave.telegrambot.database;
 
+import app.finwave.telegrambot.database.storage.ChatStorage;
 import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
 import app.finwave.telegrambot.utils.GPTMode;
-import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.TableField;
 
-import java.util.Optional;
+import java.util.LinkedHashMap;
 import java.util.UUID;
 
 import static app.finwave.telegrambot.jooq.Tables.CHATS_PREFERENCES;
-import static app.finwave.telegrambot.jooq.tables.Chats.CHATS;
 
 public class ChatPreferenceDatabase extends AbstractDatabase {
-    public ChatPreferenceDatabase(DSLContext context) {
-        super(context);
+    public ChatPreferenceDatabase(ChatStorage storage, ChatRecordsCache cache) {
+        super(storage, cache);
     }
 
     public void create(long chatId) {
-        context.insertInto(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.CHAT_ID, chatId)
-                .onConflict(CHATS_PREFERENCES.CHAT_ID)
-                .doUpdate()
-                .set(CHATS_PREFERENCES.PREFERRED_ACCOUNT_ID, -1L)
-                .set(CHATS_PREFERENCES.GPT_MODE, 0)
-                .set(CHATS_PREFERENCES.TIPS_SHOWED, true)
-                .set(CHATS_PREFERENCES.AUTO_ACCEPT_TRANSACTIONS, false)
-                .set(CHATS_PREFERENCES.HIDE_AMOUNTS, false)
-                .set(CHATS_PREFERENCES.NOTIFICATION_UUID, (UUID) null)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+        cache.putPreferences(storage.createPreferences(chatId));
     }
 
     public ChatsPreferencesRecord get(long chatId) {
-        return context.selectFrom(CHATS_PREFERENCES)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .fetchOptional().orElse(null);
+        return cache.getPreferences(chatId, () -> storage.getPreferences(chatId));
     }
 
-    public void setPreferredAccountId(long chatId, long accountId) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.PREFERRED_ACCOUNT_ID, accountId)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public Patch patch(long chatId) {
+        return new Patch(chatId);
     }
 
-    public void setGPTMode(long chatId, GPTMode mode) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.GPT_MODE, mode.mode)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public ChatsPreferencesRecord setPreferredAccountId(long chatId, long accountId) {
+        return patch(chatId).preferredAccountId(accountId).apply();
     }
 
-    public void setTipsShowed(long chatId, boolean showed) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.TIPS_SHOWED, showed)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public ChatsPreferencesRecord setGPTMode(long chatId, GPTMode mode) {
+        return patch(chatId).gptMode(mode).apply();
     }
 
-    public void setAutoAcceptTransactions(long chatId, boolean accept) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.AUTO_ACCEPT_TRANSACTIONS, accept)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public ChatsPreferencesRecord setTipsShowed(long chatId, boolean showed) {
+        return patch(chatId).tipsShowed(showed).apply();
     }
 
-    public void setHideAmounts(long chatId, boolean hide) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.HIDE_AMOUNTS, hide)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public ChatsPreferencesRecord setAutoAcceptTransactions(long chatId, boolean accept) {
+        return patch(chatId).autoAcceptTransactions(accept).apply();
     }
 
-    public void setNotificationUUID(long chatId, UUID uuid) {
-        context.update(CHATS_PREFERENCES)
-                .set(CHATS_PREFERENCES.NOTIFICATION_UUID, uuid)
-                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
-                .execute();
+    public ChatsPreferencesRecord setHideAmounts(long chatId, boolean hide) {
+        return patch(chatId).hideAmounts(hide).apply();
+    }
+
+    public ChatsPreferencesRecord setNotificationUUID(long chatId, UUID uuid) {
+        return patch(chatId).notificationUUID(uuid).apply();
+    }
+
+    public class Patch {
+        protected final long chatId;
+        protected final LinkedHashMap<Field<?>, Object> changes = new LinkedHashMap<>();
+
+        protected Patch(long chatId) {
+            this.chatId = chatId;
+        }
+
+        protected <T> Patch set(TableField<ChatsPreferencesRecord, T> field, T value) {
+            changes.put(field, value);
+
+            return this;
+        }
+
+        public Patch preferredAccountId(long accountId) {
+            return set(CHATS_PREFERENCES.PREFERRED_ACCOUNT_ID, accountId);
+        }
+
+        public Patch gptMode(GPTMode mode) {
+            return set(CHATS_PREFERENCES.GPT_MODE, mode.mode);
+        }
+
+        public Patch tipsShowed(boolean showed) {
+            return set(CHATS_PREFERENCES.TIPS_SHOWED, showed);
+        }
+
+        public Patch autoAcceptTransactions(boolean accept) {
+            return set(CHATS_PREFERENCES.AUTO_ACCEPT_TRANSACTIONS, accept);
+        }
+
+        public Patch hideAmounts(boolean hide) {
+            return set(CHATS_PREFERENCES.HIDE_AMOUNTS, hide);
+        }
+
+        public Patch notificationUUID(UUID uuid) {
+            return set(CHATS_PREFERENCES.NOTIFICATION_UUID, uuid);
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        public ChatsPreferencesRecord apply() {
+            if (changes.isEmpty())
+                return get(chatId);
+
+            ChatsPreferencesRecord record = storage.updatePreferences(chatId, changes);
+
+            cache.putPreferences(record);
+
+            return record;
+        }
     }
 }
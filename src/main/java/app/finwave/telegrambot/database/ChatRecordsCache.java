@@ -0,0 +1,118 @@
+package app.finwave.telegrambot.database;
+
+import app.finwave.telegrambot.config.DatabaseConfig;
+import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
+import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+public class ChatRecordsCache {
+    protected Cache<Long, ChatsRecord> chats;
+    protected Cache<Long, ChatsPreferencesRecord> preferences;
+
+    // newest ids pushed on this node, kept apart from the records so they outlive an evicted record and
+    // are applied when it is loaded again while the database still lags behind LastMessageWriter
+    protected Cache<Long, Integer> lastMessages;
+
+    public ChatRecordsCache(DatabaseConfig.CacheConfig config) {
+        this.chats = CacheBuilder.newBuilder()
+                .maximumSize(config.maxRecords)
+                .recordStats()
+                .build();
+
+        this.preferences = CacheBuilder.newBuilder()
+                .maximumSize(config.maxRecords)
+                .recordStats()
+                .build();
+
+        this.lastMessages = CacheBuilder.newBuilder()
+                .maximumSize(config.maxRecords)
+                .build();
+    }
+
+    public Optional<ChatsRecord> getChat(long chatId, Supplier<Optional<ChatsRecord>> loader) {
+        ChatsRecord cached = chats.getIfPresent(chatId);
+
+        if (cached != null)
+            return Optional.of(cached);
+
+        Optional<ChatsRecord> loaded = loader.get();
+
+        if (loaded.isEmpty())
+            return loaded;
+
+        // put first, so a push racing with the load either sees the record or is seen by applyLastMessage
+        chats.put(chatId, loaded.get());
+        ChatsRecord applied = applyLastMessage(chatId);
+
+        return Optional.of(applied != null ? applied : loaded.get());
+    }
+
+    public ChatsPreferencesRecord getPreferences(long chatId, Supplier<ChatsPreferencesRecord> loader) {
+        ChatsPreferencesRecord cached = preferences.getIfPresent(chatId);
+
+        if (cached != null)
+            return cached;
+
+        ChatsPreferencesRecord loaded = loader.get();
+
+        if (loaded != null)
+            preferences.put(chatId, loaded);
+
+        return loaded;
+    }
+
+    public void putChat(ChatsRecord record) {
+        if (record != null)
+            chats.put(record.getId(), record);
+    }
+
+    public void putPreferences(ChatsPreferencesRecord record) {
+        if (record != null)
+            preferences.put(record.getChatId(), record);
+    }
+
+    public long size() {
+        return chats.size();
+    }
+
+    public void updateLastMessage(long chatId, int lastMessage) {
+        lastMessages.put(chatId, lastMessage);
+        applyLastMessage(chatId);
+    }
+
+    // reads the pushed id inside compute, so concurrent callers can't write back an older one
+    protected ChatsRecord applyLastMessage(long chatId) {
+        return chats.asMap().computeIfPresent(chatId, (id, r) -> {
+            Integer lastMessage = lastMessages.getIfPresent(id);
+
+            if (lastMessage == null || lastMessage.equals(r.getLastMessage()))
+                return r;
+
+            return new ChatsRecord(
+                    r.getId(),
+                    r.getApiUrl(),
+                    r.getApiSession(),
+                    r.getType(),
+                    lastMessage
+            );
+        });
+    }
+
+    public void invalidate(long chatId) {
+        chats.invalidate(chatId);
+        preferences.invalidate(chatId);
+    }
+
+    public CacheStats getChatsStats() {
+        return chats.stats();
+    }
+
+    public CacheStats getPreferencesStats() {
+        return preferences.stats();
+    }
+}
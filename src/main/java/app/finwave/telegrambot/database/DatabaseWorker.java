@@ -2,24 +2,36 @@ package app.finwave.telegrambot.database;
 
 import app.finwave.telegrambot.config.ConfigWorker;
 import app.finwave.telegrambot.config.DatabaseConfig;
+import app.finwave.telegrambot.database.storage.ChatStorage;
+import app.finwave.telegrambot.database.storage.EmbeddedChatStorage;
+import app.finwave.telegrambot.database.storage.PostgresChatStorage;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListenerProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.nio.file.Path;
+import java.util.Optional;
 
 @Singleton
 public class DatabaseWorker {
     protected static final Logger log = LoggerFactory.getLogger(DatabaseWorker.class);
 
-    protected Connection connection;
+    protected HikariDataSource dataSource;
     protected DSLContext context;
+    protected ChatStorage storage;
+    protected QueryMetrics queryMetrics;
+
+    protected ChatRecordsCache cache;
+    protected LastMessageWriter lastMessageWriter;
 
     @Inject
     public DatabaseWorker(ConfigWorker configWorker, Migrator migrator) {
@@ -29,6 +41,36 @@ public class DatabaseWorker {
 
         System.setProperty("org.jooq.no-logo", "true");
 
+        cache = new ChatRecordsCache(config.cache);
+
+        if (config.storage.equals("embedded")) {
+            initEmbedded(config);
+        } else {
+            initPostgres(config, migrator);
+        }
+
+        lastMessageWriter = new LastMessageWriter(get(ChatDatabase.class), cache, config.writeBehind);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    protected void initEmbedded(DatabaseConfig config) {
+        long phaseStart = System.currentTimeMillis();
+
+        try {
+            storage = new EmbeddedChatStorage(Path.of(config.embeddedPath));
+        } catch (Exception e) {
+            log.error("Error to open embedded storage", e);
+
+            System.exit(1);
+        }
+
+        log.info("Embedded storage phase took {} ms", System.currentTimeMillis() - phaseStart);
+    }
+
+    protected void initPostgres(DatabaseConfig config, Migrator migrator) {
+        long phaseStart = System.currentTimeMillis();
+
         try {
             migrator.migrate();
         } catch (Exception e) {
@@ -37,32 +79,112 @@ public class DatabaseWorker {
             System.exit(1);
         }
 
+        log.info("Migration phase took {} ms", System.currentTimeMillis() - phaseStart);
         log.info("Connect to database...");
 
-        try {
-            connection = DriverManager.getConnection(config.url, config.user, config.password);
+        phaseStart = System.currentTimeMillis();
 
-            context = DSL.using(connection, SQLDialect.POSTGRES);
+        try {
+            dataSource = new HikariDataSource(buildPoolConfig(config));
+
+            queryMetrics = new QueryMetrics(config.slowQueryThreshold);
+            context = DSL.using(new DefaultConfiguration()
+                    .set(dataSource)
+                    .set(SQLDialect.POSTGRES)
+                    .set(new DefaultExecuteListenerProvider(queryMetrics))
+            );
+            storage = new PostgresChatStorage(context, config.cache.warmUpFetchSize);
         } catch (Exception e) {
             log.error("Error to connect", e);
 
             System.exit(1);
         }
+
+        log.info("Connection phase took {} ms", System.currentTimeMillis() - phaseStart);
+
+        if (config.cache.warmUp)
+            warmUp(config.cache);
+    }
+
+    protected void warmUp(DatabaseConfig.CacheConfig cacheConfig) {
+        log.info("Warming up chats cache...");
+
+        long start = System.currentTimeMillis();
+
+        try {
+            storage.forEachChat((chat, preferences) -> {
+                cache.putChat(chat);
+                cache.putPreferences(preferences);
+
+                return cache.size() < cacheConfig.maxRecords;
+            });
+        } catch (Exception e) {
+            log.warn("Failed to warm up chats cache", e);
+        }
+
+        log.info("Warmed up {} chats in {} ms", cache.size(), System.currentTimeMillis() - start);
+    }
+
+    protected HikariConfig buildPoolConfig(DatabaseConfig config) {
+        DatabaseConfig.PoolConfig pool = config.pool;
+        HikariConfig hikariConfig = new HikariConfig();
+
+        hikariConfig.setPoolName("finwave-bot-db");
+        hikariConfig.setJdbcUrl(config.url);
+        hikariConfig.setUsername(config.user);
+        hikariConfig.setPassword(config.password);
+
+        hikariConfig.setMaximumPoolSize(pool.maxPoolSize);
+        hikariConfig.setMinimumIdle(pool.minIdle);
+        hikariConfig.setConnectionTimeout(pool.connectionTimeout);
+        hikariConfig.setValidationTimeout(pool.validationTimeout);
+        hikariConfig.setIdleTimeout(pool.idleTimeout);
+        hikariConfig.setKeepaliveTime(pool.keepaliveTime);
+        hikariConfig.setMaxLifetime(pool.maxLifetime);
+
+        return hikariConfig;
+    }
+
+    public void close() {
+        if (lastMessageWriter != null)
+            lastMessageWriter.shutdown();
+
+        if (storage != null)
+            storage.close();
+
+        if (dataSource != null && !dataSource.isClosed())
+            dataSource.close();
+    }
+
+    public LastMessageWriter getLastMessageWriter() {
+        return lastMessageWriter;
+    }
+
+    public ChatRecordsCache getCache() {
+        return cache;
+    }
+
+    public ChatStorage getStorage() {
+        return storage;
+    }
+
+    public Optional<QueryMetrics> getQueryMetrics() {
+        return Optional.ofNullable(queryMetrics);
     }
 
     public DSLContext getDefaultContext() {
         return context;
     }
 
-    public <T extends AbstractDatabase> T get(Class<T> tClass, DSLContext context) {
+    public <T extends AbstractDatabase> T get(Class<T> tClass, ChatStorage storage) {
         try {
-            return tClass.getConstructor(DSLContext.class).newInstance(context);
+            return tClass.getConstructor(ChatStorage.class, ChatRecordsCache.class).newInstance(storage, cache);
         } catch (NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
             throw new RuntimeException(e);
         }
     }
 
     public <T extends AbstractDatabase> T get(Class<T> tClass) {
-        return get(tClass, context);
+        return get(tClass, storage);
     }
 }
@@ -0,0 +1,76 @@
+package app.finwave.telegrambot.database;
+
+import app.finwave.telegrambot.config.DatabaseConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class LastMessageWriter {
+    protected static final Logger log = LoggerFactory.getLogger(LastMessageWriter.class);
+
+    protected ChatDatabase database;
+    protected ChatRecordsCache cache;
+    protected DatabaseConfig.WriteBehindConfig config;
+
+    protected ConcurrentHashMap<Long, Integer> pending = new ConcurrentHashMap<>();
+    protected AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    protected ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "last-message-writer");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    public LastMessageWriter(ChatDatabase database, ChatRecordsCache cache, DatabaseConfig.WriteBehindConfig config) {
+        this.database = database;
+        this.cache = cache;
+        this.config = config;
+
+        executor.scheduleWithFixedDelay(this::flush, config.flushInterval, config.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void push(long chatId, int lastMessage) {
+        pending.put(chatId, lastMessage);
+        cache.updateLastMessage(chatId, lastMessage);
+
+        if (pending.size() >= config.flushThreshold && flushScheduled.compareAndSet(false, true))
+            executor.execute(this::flush);
+    }
+
+    public synchronized void flush() {
+        flushScheduled.set(false);
+
+        if (pending.isEmpty())
+            return;
+
+        HashMap<Long, Integer> batch = new HashMap<>(pending);
+
+        try {
+            database.updateLastMessages(batch);
+        } catch (Exception e) {
+            log.warn("Failed to flush {} last message ids, will retry", batch.size(), e);
+
+            return;
+        }
+
+        // keep ids that were replaced while the batch was in flight
+        batch.forEach(pending::remove);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) { }
+
+        flush();
+    }
+}
@@ -8,10 +8,27 @@ import org.flywaydb.core.Flyway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
 @Singleton
 public class Migrator {
     protected static final Logger log = LoggerFactory.getLogger(Migrator.class);
 
+    protected static final String FINGERPRINT_RESOURCE = "/db/migration.fingerprint";
+    // same "version:checksum,..." form the build writes, a baselined history never matches and always goes through flyway
+    protected static final String HISTORY_QUERY = """
+            select string_agg(version || ':' || checksum, ',' order by installed_rank)
+            from flyway_schema_history
+            where success and version is not null and type = 'SQL'
+            """;
+
     protected DatabaseConfig config;
     protected Flyway flyway;
 
@@ -21,6 +38,12 @@ public class Migrator {
     }
 
     public void migrate() throws Exception {
+        if (config.fastStart && isSchemaCurrent()) {
+            log.info("Schema is up to date, migration skipped");
+
+            return;
+        }
+
         log.info("Migrating database...");
 
         flyway = Flyway.configure()
@@ -37,4 +60,32 @@ public class Migrator {
 
         log.info("Done");
     }
+
+    protected boolean isSchemaCurrent() {
+        Properties fingerprint = new Properties();
+
+        try (InputStream stream = Migrator.class.getResourceAsStream(FINGERPRINT_RESOURCE)) {
+            if (stream == null)
+                return false;
+
+            fingerprint.load(stream);
+        } catch (IOException e) {
+            log.warn("Failed to read migration fingerprint", e);
+
+            return false;
+        }
+
+        try (Connection connection = DriverManager.getConnection(config.url, config.user, config.password);
+             PreparedStatement statement = connection.prepareStatement(HISTORY_QUERY);
+             ResultSet result = statement.executeQuery()) {
+
+            if (!result.next() || result.getString(1) == null)
+                return false;
+
+            return fingerprint.getProperty("migrations", "").equals(result.getString(1));
+        } catch (SQLException e) {
+            // no history table yet, let flyway create it
+            return false;
+        }
+    }
 }
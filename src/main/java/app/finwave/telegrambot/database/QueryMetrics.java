@@ -0,0 +1,123 @@
+package app.finwave.telegrambot.database;
+
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+public class QueryMetrics implements ExecuteListener {
+    protected static final Logger log = LoggerFactory.getLogger(QueryMetrics.class);
+
+    protected static final String START_KEY = "finwave.query.start";
+
+    public static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    protected ConcurrentHashMap<String, Shape> shapes = new ConcurrentHashMap<>();
+    protected long slowQueryThresholdNanos;
+
+    public QueryMetrics(long slowQueryThresholdMs) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs);
+    }
+
+    @Override
+    public void start(ExecuteContext ctx) {
+        ctx.data(START_KEY, System.nanoTime());
+    }
+
+    @Override
+    public void exception(ExecuteContext ctx) {
+        String sql = shapeOf(ctx);
+
+        if (sql != null)
+            shapes.computeIfAbsent(sql, Shape::new).errors.increment();
+    }
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        Object start = ctx.data(START_KEY);
+        String sql = shapeOf(ctx);
+
+        if (!(start instanceof Long startNanos) || sql == null)
+            return;
+
+        long elapsed = System.nanoTime() - startNanos;
+        shapes.computeIfAbsent(sql, Shape::new).record(elapsed);
+
+        if (elapsed >= slowQueryThresholdNanos)
+            log.warn("Slow query ({} ms): {}", TimeUnit.NANOSECONDS.toMillis(elapsed), sql);
+    }
+
+    protected String shapeOf(ExecuteContext ctx) {
+        if (ctx.sql() != null)
+            return ctx.sql();
+
+        String[] batch = ctx.batchSQL();
+
+        return batch.length > 0 ? batch[0] : null;
+    }
+
+    public Map<String, QueryStats> snapshot() {
+        return shapes.values().stream()
+                .map(Shape::snapshot)
+                .collect(Collectors.toMap(QueryStats::sql, (s) -> s));
+    }
+
+    public void reset() {
+        shapes.clear();
+    }
+
+    protected static class Shape {
+        protected final String sql;
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder errors = new LongAdder();
+        protected final LongAdder totalNanos = new LongAdder();
+        protected final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        protected final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+        protected Shape(String sql) {
+            this.sql = sql;
+        }
+
+        protected void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+
+            while (bucket < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[bucket])
+                bucket++;
+
+            histogram.incrementAndGet(bucket);
+        }
+
+        protected QueryStats snapshot() {
+            long[] buckets = new long[histogram.length()];
+
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = histogram.get(i);
+
+            return new QueryStats(sql, count.sum(), errors.sum(), totalNanos.sum(), maxNanos.get(), buckets);
+        }
+    }
+
+    // histogram[i] counts queries faster than BUCKET_BOUNDS_MS[i], the last one counts the rest
+    public record QueryStats(String sql, long count, long errors, long totalNanos, long maxNanos, long[] histogram) {
+        public double averageMillis() {
+            return count == 0 ? 0 : totalNanos / (double) count / 1_000_000;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1_000_000d;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package app.finwave.telegrambot.database.storage;
+
+import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
+import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
+import org.jooq.Field;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiPredicate;
+
+public interface ChatStorage extends AutoCloseable {
+    ChatsRecord registerChat(long chatId, String apiUrl, String session, short type, int lastMessage);
+
+    Optional<ChatsRecord> getChat(long chatId);
+
+    void updateLastMessages(Map<Long, Integer> lastMessages);
+
+    ChatsPreferencesRecord createPreferences(long chatId);
+
+    ChatsPreferencesRecord getPreferences(long chatId);
+
+    ChatsPreferencesRecord updatePreferences(long chatId, Map<Field<?>, Object> changes);
+
+    // the visitor returns false to stop the iteration
+    void forEachChat(BiPredicate<ChatsRecord, ChatsPreferencesRecord> visitor);
+
+    @Override
+    void close();
+}
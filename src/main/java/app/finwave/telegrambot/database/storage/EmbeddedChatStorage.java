@@ -0,0 +1,356 @@
+package app.finwave.telegrambot.database.storage;
+
+import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
+import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
+import org.jooq.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+public class EmbeddedChatStorage implements ChatStorage {
+    protected static final Logger log = LoggerFactory.getLogger(EmbeddedChatStorage.class);
+
+    protected static final byte ENTRY_CHAT = 1;
+    protected static final byte ENTRY_LAST_MESSAGE = 2;
+    protected static final byte ENTRY_PREFERENCES = 3;
+
+    // every entry is prefixed with its length and the CRC32 of its payload
+    protected static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    protected static final int MIN_MAPPED_SIZE = 1024 * 1024;
+
+    protected Path path;
+
+    protected ConcurrentHashMap<Long, ChatsRecord> chats = new ConcurrentHashMap<>();
+    protected ConcurrentHashMap<Long, ChatsPreferencesRecord> preferences = new ConcurrentHashMap<>();
+    protected AtomicInteger preferencesSequence = new AtomicInteger();
+
+    protected FileChannel channel;
+    protected MappedByteBuffer buffer;
+
+    public EmbeddedChatStorage(Path path) throws IOException {
+        this.path = path;
+
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+
+        int replayedBytes = 0;
+
+        if (Files.exists(path)) {
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                replayedBytes = replay(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()));
+            }
+        }
+
+        // replace the log with a snapshot of live entries, dropping superseded ones and any torn tail
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+
+        openLog(compacted, 0);
+        chats.values().forEach(this::appendChat);
+        preferences.values().forEach(this::appendPreferences);
+        buffer.force();
+        channel.close();
+
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (FileChannel sizeChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            openLog(path, (int) Math.min(sizeChannel.size(), Integer.MAX_VALUE));
+        }
+
+        buffer.position(findEnd());
+
+        log.info("Loaded {} chats from {} ({} bytes replayed, {} bytes live)", chats.size(), path, replayedBytes, buffer.position());
+    }
+
+    protected void openLog(Path file, int size) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, MIN_MAPPED_SIZE));
+    }
+
+    protected int findEnd() {
+        int position = 0;
+        int length;
+
+        while ((length = entryLength(buffer, position)) >= 0)
+            position += HEADER_SIZE + length;
+
+        return position;
+    }
+
+    // payload length of a complete entry at position, or -1 at the end of the log or a torn entry
+    protected static int entryLength(ByteBuffer data, int position) {
+        if (data.limit() - position < HEADER_SIZE)
+            return -1;
+
+        int length = data.getInt(position);
+
+        if (length <= 0 || length > data.limit() - position - HEADER_SIZE)
+            return -1;
+
+        CRC32 crc = new CRC32();
+        crc.update(data.slice(position + HEADER_SIZE, length));
+
+        return (int) crc.getValue() == data.getInt(position + Integer.BYTES) ? length : -1;
+    }
+
+    protected int replay(ByteBuffer data) {
+        int position = 0;
+        int length;
+
+        while ((length = entryLength(data, position)) >= 0) {
+            try {
+                if (!replayEntry(data.slice(position + HEADER_SIZE, length)))
+                    break;
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+
+            position += HEADER_SIZE + length;
+        }
+
+        return position;
+    }
+
+    protected boolean replayEntry(ByteBuffer entry) {
+        switch (entry.get()) {
+            case ENTRY_CHAT -> {
+                ChatsRecord record = new ChatsRecord(entry.getLong(), readString(entry), readString(entry), entry.getShort(), entry.getInt());
+                chats.put(record.getId(), record);
+            }
+            case ENTRY_LAST_MESSAGE -> {
+                long chatId = entry.getLong();
+                int lastMessage = entry.getInt();
+
+                chats.computeIfPresent(chatId, (id, r) -> copyOf(r).setLastMessage(lastMessage));
+            }
+            case ENTRY_PREFERENCES -> {
+                ChatsPreferencesRecord record = new ChatsPreferencesRecord(
+                        entry.getInt(),
+                        entry.getLong(),
+                        entry.getLong(),
+                        entry.getInt(),
+                        entry.get() != 0,
+                        entry.get() != 0,
+                        entry.get() != 0,
+                        entry.get() != 0 ? new UUID(entry.getLong(), entry.getLong()) : null
+                );
+
+                preferences.put(record.getChatId(), record);
+                preferencesSequence.accumulateAndGet(record.getId(), Math::max);
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    protected synchronized void append(int length, Consumer<ByteBuffer> writer) {
+        int required = buffer.position() + HEADER_SIZE + length + Integer.BYTES;
+
+        if (required > buffer.capacity()) {
+            int position = buffer.position();
+            long newSize = Math.max((long) buffer.capacity() * 2, required);
+
+            if (newSize > Integer.MAX_VALUE)
+                throw new IllegalStateException("Embedded storage " + path + " is too large");
+
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            buffer.position(position);
+        }
+
+        int position = buffer.position();
+        writer.accept(buffer.slice(position + HEADER_SIZE, length));
+
+        // the kernel may write the mapped pages back in any order, the checksum is what tells a torn entry apart
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + HEADER_SIZE, length));
+
+        buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(position, length);
+        buffer.position(position + HEADER_SIZE + length);
+    }
+
+    // registrations and preferences are flushed right away, last message ids are left to the page cache
+    // since they are batched by LastMessageWriter anyway and a lost one only means sending a new message
+    protected void force(int from) {
+        buffer.force(from, buffer.position() - from);
+    }
+
+    protected synchronized void appendChat(ChatsRecord record) {
+        byte[] apiUrl = record.getApiUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] apiSession = record.getApiSession().getBytes(StandardCharsets.UTF_8);
+
+        append(1 + Long.BYTES + Integer.BYTES * 2 + apiUrl.length + apiSession.length + Short.BYTES + Integer.BYTES, (entry) -> {
+            entry.put(ENTRY_CHAT).putLong(record.getId());
+            writeString(entry, apiUrl);
+            writeString(entry, apiSession);
+            entry.putShort(record.getType()).putInt(record.getLastMessage());
+        });
+    }
+
+    protected synchronized void appendLastMessage(long chatId, int lastMessage) {
+        append(1 + Long.BYTES + Integer.BYTES, (entry) -> entry
+                .put(ENTRY_LAST_MESSAGE)
+                .putLong(chatId)
+                .putInt(lastMessage)
+        );
+    }
+
+    protected synchronized void appendPreferences(ChatsPreferencesRecord record) {
+        UUID uuid = record.getNotificationUuid();
+        append(1 + Integer.BYTES * 2 + Long.BYTES * 2 + 4 + Long.BYTES * 2, (entry) -> entry
+                .put(ENTRY_PREFERENCES)
+                .putInt(record.getId())
+                .putLong(record.getChatId())
+                .putLong(record.getPreferredAccountId())
+                .putInt(record.getGptMode())
+                .put((byte) (record.getTipsShowed() ? 1 : 0))
+                .put((byte) (record.getAutoAcceptTransactions() ? 1 : 0))
+                .put((byte) (record.getHideAmounts() ? 1 : 0))
+                .put((byte) (uuid != null ? 1 : 0))
+                .putLong(uuid != null ? uuid.getMostSignificantBits() : 0)
+                .putLong(uuid != null ? uuid.getLeastSignificantBits() : 0)
+        );
+    }
+
+    protected static ChatsRecord copyOf(ChatsRecord record) {
+        return new ChatsRecord(record.getId(), record.getApiUrl(), record.getApiSession(), record.getType(), record.getLastMessage());
+    }
+
+    protected static ChatsPreferencesRecord copyOf(ChatsPreferencesRecord record) {
+        return new ChatsPreferencesRecord(
+                record.getId(),
+                record.getChatId(),
+                record.getPreferredAccountId(),
+                record.getGptMode(),
+                record.getTipsShowed(),
+                record.getAutoAcceptTransactions(),
+                record.getHideAmounts(),
+                record.getNotificationUuid()
+        );
+    }
+
+    @Override
+    public synchronized ChatsRecord registerChat(long chatId, String apiUrl, String session, short type, int lastMessage) {
+        ChatsRecord record = new ChatsRecord(chatId, apiUrl, session, type, lastMessage);
+
+        int from = buffer.position();
+        appendChat(record);
+        force(from);
+        chats.put(chatId, record);
+
+        return record;
+    }
+
+    @Override
+    public Optional<ChatsRecord> getChat(long chatId) {
+        return Optional.ofNullable(chats.get(chatId));
+    }
+
+    @Override
+    public synchronized void updateLastMessages(Map<Long, Integer> lastMessages) {
+        lastMessages.forEach((chatId, lastMessage) -> {
+            if (chats.computeIfPresent(chatId, (id, r) -> copyOf(r).setLastMessage(lastMessage)) != null)
+                appendLastMessage(chatId, lastMessage);
+        });
+    }
+
+    @Override
+    public synchronized ChatsPreferencesRecord createPreferences(long chatId) {
+        if (!chats.containsKey(chatId))
+            throw new IllegalStateException("Chat " + chatId + " is not registered");
+
+        ChatsPreferencesRecord existing = preferences.get(chatId);
+        int id = existing != null ? existing.getId() : preferencesSequence.incrementAndGet();
+
+        ChatsPreferencesRecord record = new ChatsPreferencesRecord(id, chatId, -1L, 0, true, false, false, null);
+
+        int from = buffer.position();
+        appendPreferences(record);
+        force(from);
+        preferences.put(chatId, record);
+
+        return record;
+    }
+
+    @Override
+    public ChatsPreferencesRecord getPreferences(long chatId) {
+        return preferences.get(chatId);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized ChatsPreferencesRecord updatePreferences(long chatId, Map<Field<?>, Object> changes) {
+        ChatsPreferencesRecord existing = preferences.get(chatId);
+
+        if (existing == null)
+            return null;
+
+        ChatsPreferencesRecord record = copyOf(existing);
+        changes.forEach((field, value) -> record.set((Field<Object>) field, value));
+
+        int from = buffer.position();
+        appendPreferences(record);
+        force(from);
+        preferences.put(chatId, record);
+
+        return record;
+    }
+
+    @Override
+    public void forEachChat(BiPredicate<ChatsRecord, ChatsPreferencesRecord> visitor) {
+        for (ChatsRecord chat : chats.values()) {
+            if (!visitor.test(chat, preferences.get(chat.getId())))
+                break;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close embedded storage", e);
+        }
+    }
+}
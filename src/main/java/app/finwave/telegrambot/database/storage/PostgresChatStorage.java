@@ -0,0 +1,132 @@
+package app.finwave.telegrambot.database.storage;
+
+import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
+import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
+import org.jooq.BatchBindStep;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+
+import static app.finwave.telegrambot.jooq.Tables.CHATS;
+import static app.finwave.telegrambot.jooq.Tables.CHATS_PREFERENCES;
+
+public class PostgresChatStorage implements ChatStorage {
+    protected DSLContext context;
+    protected int fetchSize;
+
+    public PostgresChatStorage(DSLContext context, int fetchSize) {
+        this.context = context;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public ChatsRecord registerChat(long chatId, String apiUrl, String session, short type, int lastMessage) {
+        return context.insertInto(CHATS)
+                .set(CHATS.ID, chatId)
+                .set(CHATS.API_URL, apiUrl)
+                .set(CHATS.API_SESSION, session)
+                .set(CHATS.TYPE, type)
+                .set(CHATS.LAST_MESSAGE, lastMessage)
+                .onConflict(CHATS.ID)
+                .doUpdate()
+                .set(CHATS.API_URL, apiUrl)
+                .set(CHATS.API_SESSION, session)
+                .set(CHATS.TYPE, type)
+                .set(CHATS.LAST_MESSAGE, lastMessage)
+                .where(CHATS.ID.eq(chatId))
+                .returning()
+                .fetchOne();
+    }
+
+    @Override
+    public Optional<ChatsRecord> getChat(long chatId) {
+        return context.selectFrom(CHATS)
+                .where(CHATS.ID.eq(chatId))
+                .fetchOptional();
+    }
+
+    @Override
+    public void updateLastMessages(Map<Long, Integer> lastMessages) {
+        if (lastMessages.isEmpty())
+            return;
+
+        BatchBindStep batch = context.batch(
+                context.update(CHATS)
+                        .set(CHATS.LAST_MESSAGE, (Integer) null)
+                        .where(CHATS.ID.eq((Long) null))
+        );
+
+        lastMessages.forEach((chatId, lastMessage) -> batch.bind(lastMessage, chatId));
+
+        batch.execute();
+    }
+
+    @Override
+    public ChatsPreferencesRecord createPreferences(long chatId) {
+        return context.insertInto(CHATS_PREFERENCES)
+                .set(CHATS_PREFERENCES.CHAT_ID, chatId)
+                .onConflict(CHATS_PREFERENCES.CHAT_ID)
+                .doUpdate()
+                .set(CHATS_PREFERENCES.PREFERRED_ACCOUNT_ID, -1L)
+                .set(CHATS_PREFERENCES.GPT_MODE, 0)
+                .set(CHATS_PREFERENCES.TIPS_SHOWED, true)
+                .set(CHATS_PREFERENCES.AUTO_ACCEPT_TRANSACTIONS, false)
+                .set(CHATS_PREFERENCES.HIDE_AMOUNTS, false)
+                .set(CHATS_PREFERENCES.NOTIFICATION_UUID, (UUID) null)
+                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
+                .returning()
+                .fetchOne();
+    }
+
+    @Override
+    public ChatsPreferencesRecord getPreferences(long chatId) {
+        return context.selectFrom(CHATS_PREFERENCES)
+                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
+                .fetchOptional().orElse(null);
+    }
+
+    @Override
+    public ChatsPreferencesRecord updatePreferences(long chatId, Map<Field<?>, Object> changes) {
+        return context.update(CHATS_PREFERENCES)
+                .set(changes)
+                .where(CHATS_PREFERENCES.CHAT_ID.eq(chatId))
+                .returning()
+                .fetchOne();
+    }
+
+    @Override
+    public void forEachChat(BiPredicate<ChatsRecord, ChatsPreferencesRecord> visitor) {
+        // postgres only streams with a fetch size inside a transaction
+        context.transaction((configuration) -> {
+            try (Cursor<Record> cursor = DSL.using(configuration)
+                    .select()
+                    .from(CHATS)
+                    .leftJoin(CHATS_PREFERENCES).on(CHATS_PREFERENCES.CHAT_ID.eq(CHATS.ID))
+                    .fetchSize(fetchSize)
+                    .fetchLazy()) {
+
+                while (cursor.hasNext()) {
+                    Record record = cursor.fetchNext();
+
+                    ChatsPreferencesRecord preferences = record.get(CHATS_PREFERENCES.ID) != null ?
+                            record.into(CHATS_PREFERENCES) : null;
+
+                    if (!visitor.test(record.into(CHATS), preferences))
+                        break;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+
+    }
+}
@@ -3,63 +3,182 @@ package app.finwave.telegrambot.handlers;
 import app.finwave.tat.BotCore;
 import app.finwave.tat.handlers.scened.ScenedAbstractChatHandler;
 import app.finwave.tat.scene.BaseScene;
+import app.finwave.telegrambot.api.ApiClients;
+import app.finwave.telegrambot.cluster.LeaseManager;
+import app.finwave.telegrambot.cluster.UpdateRouter;
 import app.finwave.telegrambot.config.CommonConfig;
 import app.finwave.telegrambot.database.ChatDatabase;
 import app.finwave.telegrambot.database.DatabaseWorker;
+import app.finwave.telegrambot.database.LastMessageWriter;
 import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
 import app.finwave.telegrambot.scenes.InitScene;
 import app.finwave.telegrambot.scenes.MainScene;
 import app.finwave.telegrambot.scenes.NotificationScene;
 import app.finwave.telegrambot.scenes.SettingsScene;
+import app.finwave.telegrambot.utils.ClientStateStore;
+import app.finwave.telegrambot.utils.ServerConfigsCache;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.pengrad.telegrambot.model.Update;
 import com.pengrad.telegrambot.model.User;
 import com.pengrad.telegrambot.request.GetMe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ChatHandler extends ScenedAbstractChatHandler {
+    protected static final Logger log = LoggerFactory.getLogger(ChatHandler.class);
+
+    protected static final int MAX_DEFERRED = 50;
+
+    protected static final ExecutorService THREADS = Executors.newCachedThreadPool((r) -> {
+        Thread thread = new Thread(r, "chat-handler");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
     protected ChatDatabase chatDatabase;
+    protected LastMessageWriter lastMessageWriter;
+    protected LeaseManager leaseManager;
+    protected UpdateRouter updateRouter;
     protected NotificationScene notificationScene;
+    protected MainScene mainScene;
     protected User me;
 
-    public ChatHandler(BotCore core, DatabaseWorker databaseWorker, CommonConfig commonConfig, long chatId) {
+    // chats are many and mostly idle, so they share threads but each one runs its updates and lifecycle in order
+    protected Executor executor = MoreExecutors.newSequentialExecutor(THREADS);
+    protected ArrayDeque<Update> deferred = new ArrayDeque<>();
+    protected volatile boolean hydrated;
+
+    public ChatHandler(BotCore core, DatabaseWorker databaseWorker, LeaseManager leaseManager, UpdateRouter updateRouter, ApiClients apiClients, ServerConfigsCache configsCache, ClientStateStore stateStore, CommonConfig commonConfig, long chatId) {
         super(core, chatId);
 
         this.chatDatabase = databaseWorker.get(ChatDatabase.class);
+        this.lastMessageWriter = databaseWorker.getLastMessageWriter();
+        this.leaseManager = leaseManager;
+        this.updateRouter = updateRouter;
         this.notificationScene = new NotificationScene(this);
+        this.mainScene = new MainScene(this, databaseWorker, commonConfig, apiClients, configsCache, stateStore);
 
-        registerScene("init", new InitScene(this, databaseWorker, commonConfig));
-        registerScene("main", new MainScene(this, databaseWorker, commonConfig));
+        registerScene("init", new InitScene(this, databaseWorker, commonConfig, apiClients));
+        registerScene("main", mainScene);
         registerScene("settings", new SettingsScene(this, databaseWorker));
         registerScene("notification", notificationScene);
 
         sentMessages.setLastItemWatcher((m) -> {
             if (m != null && m.second() != null) // ignore database update if last chat id loaded from database
-                chatDatabase.updateLastMessage(chatId, m.first());
+                lastMessageWriter.push(chatId, m.first());
         });
     }
 
     @Override
     public void start() {
-        Optional<ChatsRecord> chat = chatDatabase.getChat(chatId);
-        try {
-            me = core.execute(new GetMe()).get().user();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+        acquire();
+    }
+
+    @Override
+    public void handleUpdate(Update update) {
+        executor.execute(() -> process(update));
+    }
+
+    public void acquire() {
+        executor.execute(() -> {
+            if (leaseManager.owns(chatId))
+                hydrate();
+        });
+    }
+
+    public void release() {
+        executor.execute(this::dehydrate);
+    }
+
+    protected void process(Update update) {
+        // ownership may have moved while the update was queued
+        if (!leaseManager.owns(chatId)) {
+            route(update);
+
+            return;
         }
 
-        if (chat.isEmpty()) {
-            startScene("init");
+        if (!hydrate()) {
+            if (deferred.size() >= MAX_DEFERRED) {
+                log.warn("Chat {} still can't be hydrated, dropping update {}", chatId, deferred.peek().updateId());
+                deferred.poll();
+            }
+
+            deferred.add(update);
+
             return;
         }
 
-        ChatsRecord record = chat.get();
-        int lastMessage = record.getLastMessage();
+        super.handleUpdate(update);
+    }
+
+    protected void route(Update update) {
+        try {
+            updateRouter.route(chatId, update);
+        } catch (Exception e) {
+            log.warn("Failed to route update {} of chat {}", update.updateId(), chatId, e);
+        }
+    }
+
+    protected boolean hydrate() {
+        if (hydrated)
+            return true;
+
+        try {
+            if (me == null)
+                me = core.execute(new GetMe()).get().user();
+
+            Optional<ChatsRecord> chat = chatDatabase.getChat(chatId);
+
+            if (chat.isEmpty()) {
+                startScene("init");
+            } else {
+                ChatsRecord record = chat.get();
+                int lastMessage = record.getLastMessage();
+
+                if (lastMessage != -1)
+                    pushLastSentMessageId(lastMessage);
+
+                startScene("main", record);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to hydrate chat {}", chatId, e);
+
+            return false;
+        }
+
+        hydrated = true;
+
+        while (!deferred.isEmpty())
+            super.handleUpdate(deferred.poll());
+
+        return true;
+    }
+
+    protected void dehydrate() {
+        while (!deferred.isEmpty())
+            route(deferred.poll());
 
-        if (lastMessage != -1)
-            pushLastSentMessageId(lastMessage);
+        if (!hydrated)
+            return;
+
+        hydrated = false;
+
+        if (getActiveScene() != null)
+            stopActiveScene();
+
+        mainScene.release();
+    }
 
-        startScene("main", record);
+    public boolean isHydrated() {
+        return hydrated;
     }
 
     public User getMe() {
@@ -10,6 +10,7 @@ import app.finwave.tat.menu.BaseMenu;
 import app.finwave.tat.scene.BaseScene;
 import app.finwave.tat.utils.ComposedMessage;
 import app.finwave.tat.utils.MessageBuilder;
+import app.finwave.telegrambot.api.ApiClients;
 import app.finwave.telegrambot.config.CommonConfig;
 import app.finwave.telegrambot.database.ChatDatabase;
 import app.finwave.telegrambot.database.ChatPreferenceDatabase;
@@ -23,6 +24,7 @@ import java.util.concurrent.ExecutionException;
 
 public class InitScene extends BaseScene<Object> {
     protected CommonConfig commonConfig;
+    protected ApiClients apiClients;
     protected ChatDatabase chatDatabase;
     protected ChatPreferenceDatabase chatPreferences;
 
@@ -31,10 +33,11 @@ public class InitScene extends BaseScene<Object> {
 
     protected HandlerRemover newMessageRemover;
 
-    public InitScene(AbstractChatHandler abstractChatHandler, DatabaseWorker databaseWorker, CommonConfig commonConfig) {
+    public InitScene(AbstractChatHandler abstractChatHandler, DatabaseWorker databaseWorker, CommonConfig commonConfig, ApiClients apiClients) {
         super(abstractChatHandler);
 
         this.commonConfig = commonConfig;
+        this.apiClients = apiClients;
         this.chatDatabase = databaseWorker.get(ChatDatabase.class);
         this.chatPreferences = databaseWorker.get(ChatPreferenceDatabase.class);
     }
@@ -122,7 +125,7 @@ public class InitScene extends BaseScene<Object> {
         if (serverUrl == null)
             return false;
 
-        FinWaveClient finWaveClient = new FinWaveClient(serverUrl.toString());
+        FinWaveClient finWaveClient = apiClients.create(serverUrl.toString());
         try {
             return finWaveClient.runRequest(new ConfigApi.GetConfigsRequest()).get() != null;
         } catch (InterruptedException | ExecutionException e) {
@@ -172,7 +175,7 @@ public class InitScene extends BaseScene<Object> {
 
             String session = e.data.text();
 
-            FinWaveClient client = new FinWaveClient(serverUrl.toString(), session);
+            FinWaveClient client = apiClients.create(serverUrl.toString(), session);
             UserApi.UsernameResponse response = null;
             try {
                 response = client.runRequest(new UserApi.UsernameRequest()).get();
@@ -15,6 +15,8 @@ import app.finwave.tat.scene.BaseScene;
 import app.finwave.tat.utils.ComposedMessage;
 import app.finwave.tat.utils.MessageBuilder;
 import app.finwave.telegrambot.Main;
+import app.finwave.telegrambot.api.ApiClients;
+import app.finwave.telegrambot.api.RequestPipeline;
 import app.finwave.telegrambot.config.CommonConfig;
 import app.finwave.telegrambot.database.ChatDatabase;
 import app.finwave.telegrambot.database.ChatPreferenceDatabase;
@@ -57,26 +59,41 @@ public class MainScene extends BaseScene<Object> {
     protected ChatsPreferencesRecord preferencesRecord;
 
     protected CommonConfig commonConfig;
+    protected ServerConfigsCache configsCache;
+    protected ApiClients apiClients;
+    protected ClientStateStore stateStore;
+    protected ChatsRecord chatRecord;
 
-    protected List<Transaction> lastTransactions = new ArrayList<>();
-    protected List<NoteApi.NoteEntry> notes = new ArrayList<>();
+    protected volatile List<Transaction> lastTransactions = new ArrayList<>();
+    protected volatile List<NoteApi.NoteEntry> notes = new ArrayList<>();
 
     protected long lastFetch = 0;
     protected Chat.Type chatType;
 
     protected ActionParser parser;
+    protected CategoryModel categoryModel;
 
     protected AiWorker worker;
 
     protected boolean ignoreUpdates = false;
 
+    protected UpdateCoalescer updateCoalescer;
+    protected RefreshScheduler refreshScheduler;
+    protected SingleFlight<Set<UpdateScope>> refreshes = new SingleFlight<>();
+    protected Interaction interaction = new Interaction(0);
+
     protected static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
-    public MainScene(AbstractChatHandler abstractChatHandler, DatabaseWorker databaseWorker, CommonConfig commonConfig) {
+    public MainScene(AbstractChatHandler abstractChatHandler, DatabaseWorker databaseWorker, CommonConfig commonConfig, ApiClients apiClients, ServerConfigsCache configsCache, ClientStateStore stateStore) {
         super(abstractChatHandler);
 
         this.database = databaseWorker.get(ChatDatabase.class);
         this.commonConfig = commonConfig;
+        this.apiClients = apiClients;
+        this.configsCache = configsCache;
+        this.stateStore = stateStore;
+        this.updateCoalescer = new UpdateCoalescer(commonConfig.updates, this::applyServerUpdate);
+        this.refreshScheduler = new RefreshScheduler(commonConfig.refresh, () -> pushServerUpdate(UpdateScope.all()));
         this.preferenceDatabase = databaseWorker.get(ChatPreferenceDatabase.class);
 
         eventHandler.registerListener(NewMessageEvent.class, this::newMessage);
@@ -95,6 +112,7 @@ public class MainScene extends BaseScene<Object> {
             return;
         }
 
+        this.chatRecord = record;
         this.chatType = Chat.Type.values()[record.getType()];
         this.preferencesRecord = preferenceDatabase.get(chatId);
 
@@ -102,14 +120,17 @@ public class MainScene extends BaseScene<Object> {
             worker.setPreferredAccountId(preferencesRecord.getId());
         }
 
+        boolean restored = false;
+
         if (client == null) {
-            this.client = new FinWaveClient(record.getApiUrl(), record.getApiSession(), 5000, 5000);
-            this.state = new ClientState(client);
-            this.parser = new ActionParser(state);
+            this.client = apiClients.create(record.getApiUrl(), record.getApiSession());
+            this.state = new ClientState(client, record.getApiUrl(), configsCache);
+            this.categoryModel = loadCategoryModel(record);
+            this.parser = new ActionParser(state, categoryModel);
 
-            boolean aiEnabled = state.getConfigs().map((c) -> c.ai().enabled()).orElse(false);
+            restored = restoreState(record);
 
-            if (aiEnabled)
+            if (state.isAiAvailable())
                 worker = new AiWorker(client, preferencesRecord.getPreferredAccountId());
         }
 
@@ -141,8 +162,11 @@ public class MainScene extends BaseScene<Object> {
         }
 
         try {
-            if (!webSocketClient.isOpen() || !websocketAuthed || System.currentTimeMillis() - lastFetch > 30 * 60 * 1000)
+            // block only when there is nothing to show yet, otherwise serve current state and revalidate in the background
+            if (!restored && lastFetch == 0)
                 updateState();
+            else if (restored || !webSocketClient.isOpen() || !websocketAuthed || refreshScheduler.isStale(lastFetch))
+                pushServerUpdate(UpdateScope.all());
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         } catch (ExecutionException e) {
@@ -168,22 +192,118 @@ public class MainScene extends BaseScene<Object> {
         update();
     }
 
+    protected boolean restoreState(ChatsRecord record) {
+        Optional<ClientStateStore.StoredState> stored = stateStore.load(chatId, record);
+
+        if (stored.isEmpty())
+            return false;
+
+        ClientStateStore.StoredState storedState = stored.get();
+
+        state.restore(storedState.snapshot());
+        lastTransactions = storedState.lastTransactions();
+        notes = storedState.notes();
+
+        return true;
+    }
+
+    protected CategoryModel loadCategoryModel(ChatsRecord record) {
+        CommonConfig.PredictionConfig config = commonConfig.prediction;
+
+        if (!config.enabled)
+            return null;
+
+        return stateStore.loadModel(chatId, record, config).orElseGet(() -> new CategoryModel(config));
+    }
+
+    protected void learn(List<ActionParser.Result> confirmed) {
+        if (categoryModel == null)
+            return;
+
+        boolean learned = false;
+
+        for (ActionParser.Result parsed : confirmed) {
+            if (!(parsed.request() instanceof TransactionApi.NewTransactionRequest request))
+                continue;
+
+            categoryModel.learn(parsed.words(), request.accountId(), request.categoryId());
+            learned = true;
+        }
+
+        if (learned)
+            stateStore.saveModel(chatId, chatRecord, categoryModel);
+    }
+
+    public void pushServerUpdate(Set<UpdateScope> scopes) {
+        updateCoalescer.push(scopes);
+    }
+
+    protected void applyServerUpdate(Set<UpdateScope> scopes) {
+        if (state == null)
+            return;
+
+        boolean changed;
+
+        try {
+            changed = updateState(scopes);
+        } catch (ExecutionException | InterruptedException e) {
+            return;
+        }
+
+        if (changed && this.equals(((ChatHandler) abstractChatHandler).getActiveScene()))
+            update();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        interaction.cancel();
+    }
+
+    // the user moved on, whatever the previous message still waits for is not needed anymore
+    protected Interaction beginInteraction() {
+        interaction.cancel();
+        interaction = new Interaction(apiClients.getConfig().interactionDeadline);
+
+        return interaction;
+    }
+
+    public synchronized void release() {
+        interaction.cancel();
+        // also lifts the pause of a batch still in flight, its resume may never come
+        updateCoalescer.cancel();
+        refreshScheduler.cancel();
+
+        if (webSocketClient != null)
+            webSocketClient.close();
+
+        this.webSocketClient = null;
+        this.websocketAuthed = false;
+        this.client = null;
+        this.state = null;
+        this.worker = null;
+        this.categoryModel = null;
+        this.lastFetch = 0;
+    }
+
+    public void setPreferencesRecord(ChatsPreferencesRecord preferencesRecord) {
+        this.preferencesRecord = preferencesRecord;
+    }
+
     protected CompletableFuture<Boolean> appendTelegramFile(String fileId, String mime, String name) {
         return this.getChatHandler().getCore().execute(new GetFile(fileId))
                 .thenApply((r) -> r.file().filePath())
                 .thenApply((r) -> "https://api.telegram.org/file/bot" + Main.getBotToken() + "/" + r)
-                .thenApply((r) -> {
-                    try {
-                        return worker.appendFile(r, mime, name).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+                .thenCompose((r) -> interaction.track(worker.appendFile(r, mime, name)));
     }
 
     protected void gptAnswer(String message) {
         ignoreUpdates = true;
 
+        // also reached from buttons long after the message, so the answer gets its own budget
+        Interaction current = beginInteraction();
+
         BotCore core = abstractChatHandler.getCore();
         SendChatAction typingStatus = new SendChatAction(chatId, ChatAction.typing);
 
@@ -193,7 +313,11 @@ public class MainScene extends BaseScene<Object> {
         String answer;
 
         try {
-            answer = worker.ask(message).get();
+            answer = current.await(worker.ask(message));
+        }catch (CancellationException e) {
+            return;
+        }catch (TimeoutException e) {
+            answer = "Сервер не ответил вовремя, повторите запрос позже";
         }catch (Exception e) {
             e.printStackTrace();
 
@@ -247,6 +371,8 @@ public class MainScene extends BaseScene<Object> {
         menu.removeAllButtons();
         menu.setMaxButtonsInRow(1);
 
+        Interaction current = beginInteraction();
+
         if (optionalText.isEmpty() && worker != null) {
             String caption = event.data.caption();
             CompletableFuture<Boolean> future = null;
@@ -264,8 +390,10 @@ public class MainScene extends BaseScene<Object> {
                 return;
 
             try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
+                current.await(future);
+            } catch (CancellationException e) {
+                return;
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
                 e.printStackTrace();
 
                 menu.setMessage(MessageBuilder.text("Ошибка: недопустимый формат или серверный сбой"));
@@ -310,7 +438,24 @@ public class MainScene extends BaseScene<Object> {
             return;
         }
 
-        IRequest<?> newRequest = parser.parse(finalText, preferencesRecord.getPreferredAccountId());
+        List<String> lines = finalText.lines()
+                .map(String::strip)
+                .filter((l) -> !l.isEmpty())
+                .toList();
+
+        // a multi-line note stays one note
+        if (lines.size() > 1 && !finalText.startsWith("!")) {
+            batchMessage(lines);
+
+            return;
+        }
+
+        ActionParser.Result parsed = parser.parse(finalText, preferencesRecord.getPreferredAccountId());
+        IRequest<?> newRequest = parsed == null ? null : parsed.request();
+
+        // a guess nothing in the message supports is not worth confirming when the AI can do better,
+        // any named category is kept however weakly it matched, short names and other word forms score low
+        boolean uncertain = parsed == null || parsed.isGuess();
 
         if (newRequest == null && (gptMode == GPTMode.DISABLED || worker == null)) {
             menu.setMessage(MessageBuilder.text("Не удалось понять запрос. Попробуйте еще раз."));
@@ -323,7 +468,7 @@ public class MainScene extends BaseScene<Object> {
 
             menu.apply();
             return;
-        }else if (newRequest == null) {
+        }else if (newRequest == null || (uncertain && gptMode == GPTMode.ON_UNCERTAIN && worker != null)) {
             gptAnswer(finalText);
 
             return;
@@ -333,9 +478,15 @@ public class MainScene extends BaseScene<Object> {
             menu.setMessage(buildNewRequestView((TransactionApi.NewTransactionRequest) newRequest));
             menu.addButton(new InlineKeyboardButton("Подтвердить " + EmojiList.ACCEPT), (e) -> {
                 client.runRequest(newRequest).whenComplete((r, t) -> {
+                    if (t == null)
+                        learn(List.of(parsed));
+
                     if (worker != null)
                         worker.initContext();
 
+                    // refreshes started before the write would miss it
+                    invalidateInFlight();
+
                     if (!webSocketClient.isOpen() || !websocketAuthed) {
                         try {
                             updateState();
@@ -370,24 +521,160 @@ public class MainScene extends BaseScene<Object> {
         });
     }
 
-    public synchronized void updateState() throws ExecutionException, InterruptedException {
-        CompletableFuture.allOf(
-                state.update(),
-                state.fetchLastTransactions(10).whenComplete((r, t) -> {
-                    if (t != null)
-                        return;
+    protected void batchMessage(List<String> lines) {
+        int maxLines = apiClients.getConfig().maxBatchLines;
+        long preferredAccountId = preferencesRecord.getPreferredAccountId();
+
+        if (lines.size() > maxLines) {
+            menu.setMessage(MessageBuilder.text("Слишком много строк, за раз можно добавить не больше " + maxLines + " транзакций."));
+            menu.addButton(new InlineKeyboardButton(EmojiList.BACK + " Назад"), (e) -> update());
+            menu.apply();
+
+            return;
+        }
+
+        // lines do not depend on each other, the order of results still follows the message
+        List<ActionParser.Result> results = lines.parallelStream()
+                .map((line) -> parser.parse(line, preferredAccountId))
+                .toList();
+
+        ArrayList<ActionParser.Result> parsed = new ArrayList<>();
+        ArrayList<String> failed = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            if (results.get(i) == null)
+                failed.add(lines.get(i));
+            else
+                parsed.add(results.get(i));
+        }
+
+        if (parsed.isEmpty()) {
+            menu.setMessage(MessageBuilder.text("Не удалось понять запрос. Попробуйте еще раз."));
+            menu.addButton(new InlineKeyboardButton(EmojiList.BACK + " Назад"), (e) -> update());
+            menu.apply();
+
+            return;
+        }
+
+        if (preferencesRecord.getAutoAcceptTransactions() && failed.isEmpty()) {
+            submitBatch(parsed, false);
+
+            return;
+        }
+
+        menu.setMessage(buildBatchView(parsed, failed));
+        menu.addButton(new InlineKeyboardButton("Подтвердить (" + parsed.size() + ") " + EmojiList.ACCEPT), (e) -> submitBatch(parsed, true));
+        menu.addButton(new InlineKeyboardButton("Отмена " + EmojiList.CANCEL), (e) -> update());
+
+        menu.apply();
+    }
+
+    protected void submitBatch(List<ActionParser.Result> parsed, boolean confirmed) {
+        // websocket events of our own writes would refresh and re-render after every request, one refresh at the end covers them all
+        ignoreUpdates = true;
+        updateCoalescer.pause();
+
+        List<IRequest<?>> requests = parsed.stream()
+                .<IRequest<?>>map(ActionParser.Result::request)
+                .toList();
+
+        RequestPipeline.run(client, requests, apiClients.getConfig().batchConcurrency).whenComplete((errors, t) -> {
+            if (confirmed && errors != null) {
+                ArrayList<ActionParser.Result> succeeded = new ArrayList<>();
+
+                for (int i = 0; i < errors.size(); i++) {
+                    if (errors.get(i) == null)
+                        succeeded.add(parsed.get(i));
+                }
+
+                learn(succeeded);
+            }
+
+            if (worker != null)
+                worker.initContext();
+
+            ignoreUpdates = false;
+            invalidateInFlight();
+
+            refreshState(UpdateScope.all()).whenComplete((changed, e) -> {
+                updateCoalescer.resume();
+                update();
+            });
+        });
+    }
+
+    public boolean updateState() throws ExecutionException, InterruptedException {
+        return updateState(UpdateScope.all());
+    }
+
+    // returns true if anything visible changed
+    public boolean updateState(Set<UpdateScope> scopes) throws ExecutionException, InterruptedException {
+        return refreshState(scopes).get();
+    }
+
+    public CompletableFuture<Boolean> refreshState(Set<UpdateScope> scopes) {
+        if (scopes.isEmpty())
+            return CompletableFuture.completedFuture(false);
+
+        // delta updates may miss changes the server did not announce, so fall back to a full resync from time to time
+        boolean full = scopes.containsAll(UpdateScope.all()) || refreshScheduler.isStale(lastFetch);
+        Set<UpdateScope> effective = full ? UpdateScope.all() : EnumSet.copyOf(scopes);
+
+        // callers asking for the same refresh while it is in flight wait for that one instead of starting their own
+        return refreshes.run(effective, () -> fetchState(effective, full));
+    }
+
+    public void invalidateInFlight() {
+        refreshes.forget();
+
+        ClientState current = state;
+
+        if (current != null)
+            current.forgetInFlight();
+    }
+
+    protected CompletableFuture<Boolean> fetchState(Set<UpdateScope> scopes, boolean full) {
+        ClientState current = state;
 
-                    lastTransactions = r;
-                }),
-                state.fetchImportantNotes().whenComplete((r, t) -> {
-                    if (t != null)
-                        return;
+        if (current == null)
+            return CompletableFuture.completedFuture(false);
 
-                    notes = r;
-                })
-        ).get();
+        long previousVersion = current.getSnapshot().getVersion();
 
-        lastFetch = System.currentTimeMillis();
+        // fetched lists are applied under the scene lock, concurrent refreshes of other scopes must not interleave with them
+        CompletableFuture<Void> collections = current.update(scopes);
+        CompletableFuture<List<Transaction>> transactions = scopes.contains(UpdateScope.TRANSACTIONS) ?
+                current.fetchLastTransactions(10) : CompletableFuture.completedFuture(null);
+        CompletableFuture<List<NoteApi.NoteEntry>> importantNotes = scopes.contains(UpdateScope.NOTES) ?
+                current.fetchImportantNotes() : CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.allOf(collections, transactions, importantNotes)
+                .thenApply((v) -> stateFetched(current, full, previousVersion, transactions.join(), importantNotes.join()));
+    }
+
+    // null lists were not part of this refresh
+    protected synchronized boolean stateFetched(ClientState current, boolean full, long previousVersion, List<Transaction> fetchedTransactions, List<NoteApi.NoteEntry> fetchedNotes) {
+        if (full) {
+            lastFetch = System.currentTimeMillis();
+            refreshScheduler.reschedule(lastFetch);
+        }
+
+        boolean changed = current.getSnapshot().getVersion() != previousVersion;
+
+        if (fetchedTransactions != null && !fetchedTransactions.equals(lastTransactions)) {
+            lastTransactions = fetchedTransactions;
+            changed = true;
+        }
+
+        if (fetchedNotes != null && !fetchedNotes.equals(notes)) {
+            notes = fetchedNotes;
+            changed = true;
+        }
+
+        if (changed || full)
+            stateStore.save(chatId, chatRecord, current.getSnapshot(), lastTransactions, notes);
+
+        return changed;
     }
 
     public synchronized void update() {
@@ -467,6 +754,47 @@ public class MainScene extends BaseScene<Object> {
     }
 
 
+    protected ComposedMessage buildBatchView(List<ActionParser.Result> parsed, List<String> failed) {
+        MessageBuilder builder = MessageBuilder.create("Подтвердите новые транзакции: ").gap();
+
+        ClientStateSnapshot snapshot = state.getSnapshot();
+        StringBuilder amount = new StringBuilder(24);
+
+        for (ActionParser.Result result : parsed) {
+            if (!(result.request() instanceof TransactionApi.NewTransactionRequest request)) {
+                if (result.request() instanceof NoteApi.NewNoteRequest)
+                    builder.line(EmojiList.SPEECH_BALLOON + " Заметка");
+
+                continue;
+            }
+
+            AccountApi.AccountEntry account = snapshot.getAccountsMap().get(request.accountId());
+            TransactionCategoryApi.CategoryEntry category = snapshot.getTransactionCategoriesMap().get(request.categoryId());
+
+            amount.setLength(0);
+            snapshot.formatAmount(amount, request.delta(), request.accountId(), true, preferencesRecord.getHideAmounts());
+
+            builder.append(EmojiList.WARNING + " " + amount + ": ")
+                    .append(account.name())
+                    .append(", ")
+                    .append(category.name());
+
+            if (!result.words().isEmpty())
+                builder.append(" (" + String.join(" ", result.words()) + ")");
+
+            builder.gap();
+        }
+
+        if (!failed.isEmpty()) {
+            builder.gap().line(EmojiList.CANCEL + " Не распознаны и будут пропущены:");
+
+            for (String line : failed)
+                builder.line(line);
+        }
+
+        return builder.build();
+    }
+
     protected ComposedMessage buildTipsView() {
         MessageBuilder builder = MessageBuilder.create("Советы:").gap();
 
@@ -507,10 +835,16 @@ public class MainScene extends BaseScene<Object> {
     }
 
     protected ComposedMessage buildTransactionsView() {
+        return buildTransactionsView(state.getSnapshot(), lastTransactions, preferencesRecord.getHideAmounts());
+    }
+
+    // static so they can be rendered from a bare snapshot, as the benchmarks do
+    protected static ComposedMessage buildTransactionsView(ClientStateSnapshot snapshot, List<Transaction> lastTransactions, boolean hideAmounts) {
         MessageBuilder builder = MessageBuilder.create(EmojiList.ACCOUNT + " Последние транзакции:").gap();
 
-        var accountsMap = state.getAccountsMap();
-        var tagsMap = state.getTransactionCategoriesMap();
+        var accountsMap = snapshot.getAccountsMap();
+        var tagsMap = snapshot.getTransactionCategoriesMap();
+        StringBuilder amount = new StringBuilder(24);
 
         for (int i = 0; i < lastTransactions.size(); i++) {
             Transaction transaction = lastTransactions.get(i);
@@ -523,7 +857,10 @@ public class MainScene extends BaseScene<Object> {
             String treeDecorate = i == lastTransactions.size() - 1 ? "└  " : "├  ";
             builder.append(treeDecorate);
 
-            builder.append(state.formatAmount(delta, account.accountId(), true, preferencesRecord.getHideAmounts()))
+            amount.setLength(0);
+            snapshot.formatAmount(amount, delta, account.accountId(), true, hideAmounts);
+
+            builder.append(amount.toString())
                     .append(": ")
                     .append(account.name())
                     .append(", ")
@@ -540,11 +877,15 @@ public class MainScene extends BaseScene<Object> {
     }
 
     protected ComposedMessage buildAccountsView() {
+        return buildAccountsView(state.getSnapshot(), preferencesRecord.getPreferredAccountId(), preferencesRecord.getHideAmounts());
+    }
+
+    protected static ComposedMessage buildAccountsView(ClientStateSnapshot snapshot, long preferredAccountId, boolean hideAmounts) {
         MessageBuilder builder = MessageBuilder.create();
-        var toRender = state.getAccountsByTags();
+        StringBuilder amount = new StringBuilder(24);
 
-        for (var entry : toRender.entrySet()) {
-            List<AccountApi.AccountEntry> accounts = entry.getValue().stream().filter(a -> !a.hidden()).toList();
+        for (var entry : snapshot.getVisibleAccountsByFolder().entrySet()) {
+            List<AccountApi.AccountEntry> accounts = entry.getValue();
             builder.line(entry.getKey().name());
 
             for (int i = 0; i < accounts.size(); i++) {
@@ -553,12 +894,15 @@ public class MainScene extends BaseScene<Object> {
                 String treeDecorate = i == accounts.size() - 1 ? "└─" : "├─";
                 builder.append(treeDecorate);
 
-                if (account.accountId() == preferencesRecord.getPreferredAccountId())
+                if (account.accountId() == preferredAccountId)
                     builder.bold().append(account.name()).bold();
                 else
                     builder.append(account.name());
 
-                builder.append(": " + state.formatAmount(account.amount(), account.accountId(), false, preferencesRecord.getHideAmounts()));
+                amount.setLength(0);
+                snapshot.formatAmount(amount.append(": "), account.amount(), account.accountId(), false, hideAmounts);
+
+                builder.append(amount.toString());
                 builder.gap();
             }
 
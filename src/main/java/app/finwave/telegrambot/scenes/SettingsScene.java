@@ -19,6 +19,7 @@ public class SettingsScene extends BaseScene<ClientState> {
     protected ChatPreferenceDatabase database;
     protected ClientState state;
     protected BaseMenu menu;
+    protected ChatsPreferencesRecord record;
 
     public SettingsScene(AbstractChatHandler abstractChatHandler, DatabaseWorker databaseWorker) {
         super(abstractChatHandler);
@@ -32,6 +33,7 @@ public class SettingsScene extends BaseScene<ClientState> {
         super.start();
 
         this.state = state;
+        this.record = database.get(chatId);
         menu = new BaseMenu(this);
 
         showMain();
@@ -40,8 +42,7 @@ public class SettingsScene extends BaseScene<ClientState> {
     public void showMain() {
         menu.removeAllButtons();
 
-        ChatsPreferencesRecord record = database.get(chatId);
-        boolean aiAvailable = state.getConfigs().map(c -> c.ai().enabled()).orElse(false);
+        boolean aiAvailable = state.isAiAvailable();
 
         MessageBuilder builder = MessageBuilder.create();
 
@@ -73,19 +74,19 @@ public class SettingsScene extends BaseScene<ClientState> {
             menu.addButton(new InlineKeyboardButton("Изменить режим GPT " + EmojiList.BRAIN), (e) -> editGPTMode());
 
         menu.addButton(new InlineKeyboardButton("Переключить подсказки " + EmojiList.LIGHT_BULB), (e) -> {
-           database.setTipsShowed(chatId, !record.getTipsShowed());
+           record = database.setTipsShowed(chatId, !record.getTipsShowed());
 
            showMain();
         });
 
         menu.addButton(new InlineKeyboardButton("Переключить авто-подтверждение " + EmojiList.CLIPBOARD), (e) -> {
-            database.setAutoAcceptTransactions(chatId, !record.getAutoAcceptTransactions());
+            record = database.setAutoAcceptTransactions(chatId, !record.getAutoAcceptTransactions());
 
             showMain();
         });
 
         menu.addButton(new InlineKeyboardButton("Переключить скрытие сумм " + EmojiList.EYES), (e) -> {
-            database.setHideAmounts(chatId, !record.getHideAmounts());
+            record = database.setHideAmounts(chatId, !record.getHideAmounts());
 
             showMain();
         });
@@ -109,7 +110,7 @@ public class SettingsScene extends BaseScene<ClientState> {
 
         for (GPTMode mode : GPTMode.values()) {
             menu.addButton(new InlineKeyboardButton(mode.name), (e) -> {
-                database.setGPTMode(chatId, mode);
+                record = database.setGPTMode(chatId, mode);
 
                 showMain();
             });
@@ -140,7 +141,7 @@ public class SettingsScene extends BaseScene<ClientState> {
             }
 
             menu.addButton(new InlineKeyboardButton(account.name() + showedDescription), (e) -> {
-                database.setPreferredAccountId(chatId, account.accountId());
+                record = database.setPreferredAccountId(chatId, account.accountId());
 
                 showMain();
             });
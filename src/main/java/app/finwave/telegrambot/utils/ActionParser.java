@@ -3,146 +3,170 @@ package app.finwave.telegrambot.utils;
 import app.finwave.api.*;
 import app.finwave.api.tools.IRequest;
 import app.finwave.tat.utils.Pair;
-import org.apache.commons.text.similarity.JaccardSimilarity;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 public class ActionParser {
-    protected ClientState state;
+    protected static final double MIN_ACCOUNT_SIMILARITY = 0.1;
 
-    protected JaccardSimilarity similarity = new JaccardSimilarity();
+    protected ClientState state;
+    protected CategoryModel model;
 
-    public ActionParser(ClientState state) {
+    public ActionParser(ClientState state, CategoryModel model) {
         this.state = state;
+        this.model = model;
     }
 
-    protected Pair<AccountApi.AccountEntry, Integer> findAccount(List<String> words, int deltaIndex, long preferredAccountId) {
-        AccountApi.AccountEntry targetAccount = null;
-
-        List<AccountApi.AccountEntry> accounts = state.getAccounts();
-        Map<Long, AccountFolderApi.FolderEntry> folderMap = state.getAccountFoldersMap();
-
-        double maxAccountSimilarity = -1;
-        double accountSim;
-        int accountAdditionalWords = 0;
+    // words are what the request was matched on, confidence is 1 for notes and the learned or name match score otherwise
+    public record Result(IRequest<?> request, List<String> words, double confidence) {
+        // nothing in the message named the category, it was picked by the sign of the amount alone
+        public boolean isGuess() {
+            return confidence == 0;
+        }
+    }
 
-        for (var account : accounts) {
-            AccountFolderApi.FolderEntry folder = folderMap.get(account.folderId());
-            int additionalWords = folder.name().trim().split(" ").length +
-                    account.name().trim().split(" ").length + 1;
+    protected record AccountMatch(AccountApi.AccountEntry account, int additionalWords, double similarity) {}
 
-            String closetWords = String.join(" ", words.subList(
-                    Math.max(0, deltaIndex - additionalWords),
-                    Math.min(words.size(), deltaIndex + additionalWords + 1)
-            )).toLowerCase();
+    protected AccountMatch findAccount(ClientStateSnapshot snapshot, List<String> words, int deltaIndex, long preferredAccountId) {
+        NameIndex<AccountApi.AccountEntry> index = snapshot.getAccountsIndex();
+        AccountApi.AccountEntry preferred = snapshot.getAccountsMap().get(preferredAccountId);
 
-            accountSim = similarity.apply(closetWords, (folder.name() + " " + account.name()).toLowerCase());
+        AccountApi.AccountEntry[] targetAccount = {null};
+        double[] maxAccountSimilarity = {-1};
+        int[] accountAdditionalWords = {0};
+        double[] preferredSimilarity = {0};
 
-            if (account.accountId() == preferredAccountId)
+        // window covers the folder and account names plus one word around the amount
+        index.score(words, deltaIndex, (wordCount) -> wordCount + 1, (account, position, accountSim) -> {
+            if (account.accountId() == preferredAccountId) {
                 accountSim *= 1.2;
-
-            if (accountSim > maxAccountSimilarity) {
-                maxAccountSimilarity = accountSim;
-                targetAccount = account;
-                accountAdditionalWords = additionalWords;
+                preferredSimilarity[0] = accountSim;
             }
-        }
 
-        return Pair.of(targetAccount, accountAdditionalWords);
-    }
+            if (accountSim > maxAccountSimilarity[0]) {
+                maxAccountSimilarity[0] = accountSim;
+                targetAccount[0] = account;
+                accountAdditionalWords[0] = index.getWordCount(position) + 1;
+            }
+        });
 
-    protected TransactionCategoryApi.CategoryEntry findCategory(ArrayList<String> words, int deltaIndex, int deltaSig, int accountAdditionalWords) {
-        TransactionCategoryApi.CategoryEntry targetCategory = null;
+        // only entries sharing a gram get scored, so one incidental gram must not be enough to displace the preferred account
+        if (preferred != null && (targetAccount[0] == null || maxAccountSimilarity[0] < MIN_ACCOUNT_SIMILARITY))
+            return new AccountMatch(preferred, targetAccount[0] == preferred ? accountAdditionalWords[0] : 0, preferredSimilarity[0]);
 
-        List<TransactionCategoryApi.CategoryEntry> categories = state.getTransactionCategories().stream().filter((t) -> t.type() * deltaSig >= 0).toList();
-        double maxCategorySimilarity = -1;
-        double categorySim;
+        // no preferred account and nothing matched, the first one like the old all-zero scores did
+        if (targetAccount[0] == null && !index.getEntries().isEmpty()) {
+            targetAccount[0] = index.getEntries().get(0);
+            accountAdditionalWords[0] = index.getWordCount(0) + 1;
+        }
 
-        for (var category : categories) {
-            int additionalWords = accountAdditionalWords + category.name().trim().split(" ").length;
+        return new AccountMatch(targetAccount[0], accountAdditionalWords[0], Math.max(0, maxAccountSimilarity[0]));
+    }
 
-            String closetWords = String.join(" ", words.subList(
-                    Math.max(0, deltaIndex - additionalWords),
-                    Math.min(words.size(), deltaIndex + additionalWords + 1)
-            )).toLowerCase();
+    protected Pair<TransactionCategoryApi.CategoryEntry, Double> findCategory(ClientStateSnapshot snapshot, ArrayList<String> words, int deltaIndex, int deltaSig, int accountAdditionalWords) {
+        TransactionCategoryApi.CategoryEntry[] targetCategory = {null};
+        double[] maxCategorySimilarity = {-1};
 
-            categorySim = similarity.apply(closetWords, category.name().toLowerCase());
+        snapshot.getCategoriesIndex().score(words, deltaIndex, (wordCount) -> accountAdditionalWords + wordCount, (category, position, categorySim) -> {
+            if (category.type() * deltaSig < 0)
+                return;
 
-            if (categorySim > maxCategorySimilarity) {
-                maxCategorySimilarity = categorySim;
-                targetCategory = category;
+            if (categorySim > maxCategorySimilarity[0]) {
+                maxCategorySimilarity[0] = categorySim;
+                targetCategory[0] = category;
             }
-        }
+        });
 
-        return targetCategory;
+        if (targetCategory[0] != null)
+            return Pair.of(targetCategory[0], maxCategorySimilarity[0]);
+
+        // nothing matched, a guess by sign only
+        return Pair.of(snapshot.getTransactionCategories().stream()
+                .filter((t) -> t.type() * deltaSig >= 0)
+                .findFirst()
+                .orElse(null), 0d);
     }
 
-    public IRequest<?> parse(String clientRequest, long preferredAccountId) {
+    public Result parse(String clientRequest, long preferredAccountId) {
         if (clientRequest == null || clientRequest.isBlank())
             return null;
 
         if (clientRequest.startsWith("!"))
-            return new NoteApi.NewNoteRequest(null, clientRequest.substring(1));
+            return new Result(new NoteApi.NewNoteRequest(null, clientRequest.substring(1)), List.of(), 1);
 
-        ArrayList<String> words = new ArrayList<>(Arrays.asList(clientRequest.split(" ")));
+        List<AmountLexer.Token> tokens = AmountLexer.tokenize(clientRequest);
+        ArrayList<String> words = new ArrayList<>(tokens.size());
 
         BigDecimal delta = null;
         int deltaIndex = 0;
 
-        for (String word : words) {
-            try {
-                delta = new BigDecimal(word.replace(',', '.'));
-                if (delta.signum() == 0)
-                    continue;
-
-                words.remove(deltaIndex);
-
-                if (!word.startsWith("-") && !word.startsWith("+")) {
-                    delta = delta.negate();
-                }
-
-                break;
-            }catch (NumberFormatException ignored) {
+        // the first non-zero amount is the delta, everything else (zero amounts included) takes part in matching
+        for (AmountLexer.Token token : tokens) {
+            if (delta == null && token.isAmount() && token.amount().signum() != 0) {
+                delta = token.signed() ? token.amount() : token.amount().negate();
+                deltaIndex = words.size();
 
+                continue;
             }
 
-            deltaIndex++;
+            words.add(token.text());
         }
 
         if (delta == null || words.isEmpty())
             return null;
 
+        ClientStateSnapshot snapshot = state.getSnapshot();
+        CategoryModel.Prediction prediction = model == null ? null : model.predict(words, delta.signum(), snapshot);
+
         AccountApi.AccountEntry targetAccount;
         int additionalWords = 0;
+        double accountSimilarity = 0;
 
         if (words.size() == 1) {
-            targetAccount = state.getAccountsMap().get(preferredAccountId);
+            targetAccount = snapshot.getAccountsMap().get(preferredAccountId);
         }else {
-            Pair<AccountApi.AccountEntry, Integer> found = findAccount(words, deltaIndex, preferredAccountId);
-            targetAccount = found.first();
-            additionalWords = found.second();
+            AccountMatch found = findAccount(snapshot, words, deltaIndex, preferredAccountId);
+            targetAccount = found.account();
+            additionalWords = found.additionalWords();
+            accountSimilarity = found.similarity();
         }
 
-        if (targetAccount == null)
-            return null;
+        TransactionCategoryApi.CategoryEntry targetCategory = null;
+        double categorySimilarity = 0;
 
-        TransactionCategoryApi.CategoryEntry targetCategory = findCategory(words, deltaIndex, delta.signum(), additionalWords);
+        if (targetAccount != null) {
+            Pair<TransactionCategoryApi.CategoryEntry, Double> found = findCategory(snapshot, words, deltaIndex, delta.signum(), additionalWords);
+            targetCategory = found.first();
+            categorySimilarity = found.second();
+        }
+
+        // learned habits fill in whatever the message does not name explicitly
+        if (model != null && model.isConfident(prediction)) {
+            if (targetAccount == null || !model.isOverriddenBy(accountSimilarity))
+                targetAccount = prediction.account();
 
-        if (targetCategory == null)
+            if (targetCategory == null || !model.isOverriddenBy(categorySimilarity))
+                targetCategory = prediction.category();
+
+            return buildResult(targetCategory, targetAccount, delta, words, Math.max(prediction.confidence(), categorySimilarity));
+        }
+
+        if (targetAccount == null || targetCategory == null)
             return null;
 
-        return new TransactionApi.NewTransactionRequest(
-                targetCategory.categoryId(),
-                targetAccount.accountId(),
+        return buildResult(targetCategory, targetAccount, delta, words, categorySimilarity);
+    }
+
+    protected Result buildResult(TransactionCategoryApi.CategoryEntry category, AccountApi.AccountEntry account, BigDecimal delta, List<String> words, double confidence) {
+        return new Result(new TransactionApi.NewTransactionRequest(
+                category.categoryId(),
+                account.accountId(),
                 OffsetDateTime.now(),
                 delta,
                 String.join(" ", words) + " (TG)"
-        );
+        ), words, confidence);
     }
 }
@@ -41,7 +41,8 @@ public class AiWorker {
     public CompletableFuture<String> ask(String message) {
         long context = getCurrentContextId().orElseThrow();
 
-        return client.runRequest(new AiApi.AskRequest(context, message), 2 * 60 * 1000, 2 * 60 * 1000)
+        // the deadline of AskRequest comes from the api config
+        return client.runRequest(new AiApi.AskRequest(context, message))
                 .thenApply(AiApi.AnswerResponse::answer);
     }
 
@@ -50,15 +51,9 @@ public class AiWorker {
 
         return client.runRequest(
                 new FilesApi.UploadFromURLRequest(1, true, mime, name, null, telegramUrl)
-        ).thenApply((response -> {
-            try {
-                return client.runRequest(new AiApi.AttachFileRequest(context, response.fileId())).get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-
-                return null;
-            }
-        })).thenApply(
+        ).thenCompose(
+                (response) -> client.runRequest(new AiApi.AttachFileRequest(context, response.fileId()))
+        ).thenApply(
                 (r) -> r != null && r.message().equals("Attached successfully")
         );
     }
@@ -0,0 +1,162 @@
+package app.finwave.telegrambot.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AmountLexer {
+    protected static final int MAX_COMPACT_DIGITS = 18;
+
+    public enum Type {
+        WORD,
+        AMOUNT
+    }
+
+    // amount is null for words; signed tells whether the user wrote an explicit + or -
+    public record Token(Type type, String text, int position, int start, int end, BigDecimal amount, boolean signed) {
+        public boolean isAmount() {
+            return type == Type.AMOUNT;
+        }
+    }
+
+    public static List<Token> tokenize(String text) {
+        ArrayList<Token> tokens = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+
+        while (start < length) {
+            while (start < length && Character.isWhitespace(text.charAt(start)))
+                start++;
+
+            int end = start;
+
+            while (end < length && !Character.isWhitespace(text.charAt(end)))
+                end++;
+
+            if (end > start) {
+                BigDecimal amount = parseAmount(text, start, end);
+                String word = text.substring(start, end);
+
+                if (amount != null) {
+                    char first = text.charAt(start);
+                    tokens.add(new Token(Type.AMOUNT, word, tokens.size(), start, end, amount, first == '+' || first == '-'));
+                } else {
+                    tokens.add(new Token(Type.WORD, word, tokens.size(), start, end, null, false));
+                }
+            }
+
+            start = end;
+        }
+
+        return tokens;
+    }
+
+    protected static boolean isGrouping(char c) {
+        return c == '\'' || c == '\u00A0' || c == '\u202F' || c == '_';
+    }
+
+    // returns null when [start, end) is not a number; never throws
+    protected static BigDecimal parseAmount(String text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (text.charAt(i) == '+' || text.charAt(i) == '-') {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        if (i == end)
+            return null;
+
+        // the last '.' or ',' is the decimal point when both kinds are present or the mark occurs once,
+        // otherwise every mark is a thousands separator
+        int lastDot = -1, lastComma = -1, dots = 0, commas = 0;
+
+        for (int j = i; j < end; j++) {
+            char c = text.charAt(j);
+
+            if (c == '.') {
+                lastDot = j;
+                dots++;
+            } else if (c == ',') {
+                lastComma = j;
+                commas++;
+            } else if (!(c >= '0' && c <= '9') && !isGrouping(c)) {
+                return null;
+            }
+        }
+
+        int decimalPoint;
+
+        if (dots > 0 && commas > 0) {
+            decimalPoint = Math.max(lastDot, lastComma);
+
+            if ((decimalPoint == lastDot ? dots : commas) > 1)
+                return null;
+        } else if (dots == 1 || commas == 1) {
+            decimalPoint = Math.max(lastDot, lastComma);
+        } else {
+            decimalPoint = -1;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        int groupDigits = 0;
+        boolean grouped = false;
+        StringBuilder overflow = null;
+
+        for (int j = i; j < end; j++) {
+            char c = text.charAt(j);
+
+            if (c >= '0' && c <= '9') {
+                if (digits == MAX_COMPACT_DIGITS) {
+                    overflow = new StringBuilder(end - start).append(unscaled);
+                }
+
+                if (overflow != null) {
+                    overflow.append(c);
+                } else {
+                    unscaled = unscaled * 10 + (c - '0');
+                }
+
+                digits++;
+                groupDigits++;
+
+                if (decimalPoint != -1 && j > decimalPoint)
+                    scale++;
+
+                continue;
+            }
+
+            if (j == decimalPoint) {
+                if (grouped && groupDigits != 3)
+                    return null;
+
+                groupDigits = 0;
+                grouped = false;
+                continue;
+            }
+
+            // a separator must sit between digits of the integer part and be followed by a full group of three
+            if (decimalPoint != -1 && j > decimalPoint)
+                return null;
+
+            if (digits == 0 || (grouped && groupDigits != 3) || (!grouped && groupDigits > 3))
+                return null;
+
+            grouped = true;
+            groupDigits = 0;
+        }
+
+        if (digits == 0 || (grouped && groupDigits != 3))
+            return null;
+
+        BigDecimal amount = overflow == null ?
+                BigDecimal.valueOf(unscaled, scale) :
+                new BigDecimal(new BigInteger(overflow.toString()), scale);
+
+        return negative ? amount.negate() : amount;
+    }
+}
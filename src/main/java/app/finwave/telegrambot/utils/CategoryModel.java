@@ -0,0 +1,230 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.AccountApi;
+import app.finwave.api.TransactionCategoryApi;
+import app.finwave.telegrambot.config.CommonConfig;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+// per-chat word -> (account, category) counts learned from confirmed transactions
+public class CategoryModel {
+    // counts of a word are halved when one of them reaches this, so recent habits win over old ones
+    protected static final int DECAY_AT = 64;
+
+    protected CommonConfig.PredictionConfig config;
+    protected HashMap<String, Votes> words = new HashMap<>();
+
+    public CategoryModel(CommonConfig.PredictionConfig config) {
+        this.config = config;
+    }
+
+    protected record Key(long accountId, long categoryId) {}
+
+    public record Prediction(AccountApi.AccountEntry account, TransactionCategoryApi.CategoryEntry category, double confidence) {}
+
+    protected static class Votes {
+        protected long[] accounts;
+        protected long[] categories;
+        protected int[] counts;
+        protected int size;
+        protected int total;
+
+        protected Votes(int capacity) {
+            this.accounts = new long[capacity];
+            this.categories = new long[capacity];
+            this.counts = new int[capacity];
+        }
+
+        protected void add(long accountId, long categoryId, int count) {
+            int slot = -1;
+
+            for (int i = 0; i < size; i++) {
+                if (accounts[i] == accountId && categories[i] == categoryId) {
+                    slot = i;
+
+                    break;
+                }
+            }
+
+            if (slot == -1 && size < counts.length) {
+                slot = size++;
+            } else if (slot == -1) {
+                // full, the rarest pair gives its place away
+                slot = 0;
+
+                for (int i = 1; i < size; i++) {
+                    if (counts[i] < counts[slot])
+                        slot = i;
+                }
+
+                total -= counts[slot];
+                counts[slot] = 0;
+            }
+
+            accounts[slot] = accountId;
+            categories[slot] = categoryId;
+            counts[slot] += count;
+            total += count;
+
+            if (counts[slot] >= DECAY_AT)
+                decay();
+        }
+
+        protected void decay() {
+            total = 0;
+
+            for (int i = 0; i < size; i++) {
+                counts[i] = Math.max(1, counts[i] / 2);
+                total += counts[i];
+            }
+        }
+    }
+
+    public synchronized void learn(List<String> message, long accountId, long categoryId) {
+        for (String word : normalize(message)) {
+            Votes votes = words.get(word);
+
+            if (votes == null) {
+                if (words.size() >= config.maxWords)
+                    evictRarest();
+
+                votes = new Votes(config.maxCandidates);
+                words.put(word, votes);
+            }
+
+            votes.add(accountId, categoryId, 1);
+        }
+    }
+
+    // confidence is the share of all votes given to the best pair, smoothed so a single confirmation stays below 1;
+    // a word the model has never seen votes for nothing, so it lowers the confidence
+    public synchronized Prediction predict(List<String> message, int deltaSig, ClientStateSnapshot snapshot) {
+        HashMap<Key, Integer> pairVotes = new HashMap<>();
+        int total = 0;
+
+        for (String word : normalize(message)) {
+            Votes votes = words.get(word);
+
+            if (votes == null) {
+                total++;
+
+                continue;
+            }
+
+            total += votes.total;
+
+            for (int i = 0; i < votes.size; i++) {
+                AccountApi.AccountEntry account = snapshot.getAccountsMap().get(votes.accounts[i]);
+                TransactionCategoryApi.CategoryEntry category = snapshot.getTransactionCategoriesMap().get(votes.categories[i]);
+
+                // deleted since learned, or the other direction of money
+                if (account == null || category == null || category.type() * deltaSig < 0)
+                    continue;
+
+                pairVotes.merge(new Key(votes.accounts[i], votes.categories[i]), votes.counts[i], Integer::sum);
+            }
+        }
+
+        Key bestKey = null;
+        int best = 0;
+
+        for (var entry : pairVotes.entrySet()) {
+            if (entry.getValue() > best) {
+                best = entry.getValue();
+                bestKey = entry.getKey();
+            }
+        }
+
+        if (best == 0)
+            return null;
+
+        return new Prediction(
+                snapshot.getAccountsMap().get(bestKey.accountId()),
+                snapshot.getTransactionCategoriesMap().get(bestKey.categoryId()),
+                (double) best / (total + 1)
+        );
+    }
+
+    public boolean isConfident(Prediction prediction) {
+        return prediction != null && prediction.confidence() >= config.minConfidence;
+    }
+
+    // a name the message matches this well was meant explicitly and wins over the learned pair
+    public boolean isOverriddenBy(double nameSimilarity) {
+        return nameSimilarity >= config.nameOverride;
+    }
+
+    public synchronized int size() {
+        return words.size();
+    }
+
+    protected void evictRarest() {
+        String rarest = null;
+        int rarestTotal = Integer.MAX_VALUE;
+
+        for (var entry : words.entrySet()) {
+            if (entry.getValue().total < rarestTotal) {
+                rarest = entry.getKey();
+                rarestTotal = entry.getValue().total;
+            }
+        }
+
+        if (rarest != null)
+            words.remove(rarest);
+    }
+
+    protected static Set<String> normalize(List<String> message) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+
+        for (String word : message) {
+            String normalized = word.toLowerCase().replaceAll("[^\\p{L}\\p{N}]", "");
+
+            if (normalized.length() > 1)
+                result.add(normalized);
+        }
+
+        return result;
+    }
+
+    public synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(words.size());
+
+        for (var entry : words.entrySet()) {
+            Votes votes = entry.getValue();
+
+            out.writeUTF(entry.getKey());
+            out.writeByte(votes.size);
+
+            for (int i = 0; i < votes.size; i++) {
+                out.writeLong(votes.accounts[i]);
+                out.writeLong(votes.categories[i]);
+                out.writeInt(votes.counts[i]);
+            }
+        }
+    }
+
+    public static CategoryModel read(DataInputStream in, CommonConfig.PredictionConfig config) throws IOException {
+        CategoryModel model = new CategoryModel(config);
+        int wordsCount = in.readInt();
+
+        for (int i = 0; i < wordsCount; i++) {
+            String word = in.readUTF();
+            int size = in.readUnsignedByte();
+
+            Votes votes = new Votes(config.maxCandidates);
+
+            for (int j = 0; j < size; j++)
+                votes.add(in.readLong(), in.readLong(), in.readInt());
+
+            if (model.words.size() >= config.maxWords)
+                model.evictRarest();
+
+            model.words.put(word, votes);
+        }
+
+        return model;
+    }
+}
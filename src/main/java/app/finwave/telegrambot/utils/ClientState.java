@@ -4,279 +4,180 @@ import app.finwave.api.*;
 import app.finwave.api.tools.Transaction;
 import app.finwave.api.tools.TransactionsFilter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ClientState {
+    protected static final Logger log = LoggerFactory.getLogger(ClientState.class);
+
     protected FinWaveClient client;
+    protected String apiUrl;
+    protected ServerConfigsCache configsCache;
+
+    // concurrent refreshes of the same collection join one request
+    protected final SingleFlight<Object> flights = new SingleFlight<>();
+    protected final AtomicReference<ClientStateSnapshot> snapshot = new AtomicReference<>(ClientStateSnapshot.EMPTY);
 
-    protected ConfigApi.PublicConfigs configs;
-    protected CompletableFuture<ConfigApi.PublicConfigs> configsFuture;
+    public ClientState(FinWaveClient client, String apiUrl, ServerConfigsCache configsCache) {
+        this.client = client;
+        this.apiUrl = apiUrl;
+        this.configsCache = configsCache;
 
-    protected List<AccountFolderApi.FolderEntry> accountFolders = new ArrayList<>();
-    protected List<AccountApi.AccountEntry> accounts = new ArrayList<>();
-    protected HashMap<Long, AccountFolderApi.FolderEntry> accountFoldersMap = new HashMap<>();
-    protected HashMap<Long, AccountApi.AccountEntry> accountsMap = new HashMap<>();
+        configsCache.prefetch(apiUrl);
+    }
 
-    protected List<TransactionCategoryApi.CategoryEntry> transactionCategories = new ArrayList<>();
-    protected HashMap<Long, TransactionCategoryApi.CategoryEntry> transactionCategoriesMap = new HashMap<>();
+    // offline state that only serves restored snapshots, never talks to a server
+    protected ClientState() {
+    }
 
-    protected List<CurrencyApi.CurrencyEntry> currencies = new ArrayList<>();
-    protected HashMap<Long, CurrencyApi.CurrencyEntry> currenciesMap = new HashMap<>();
+    public CompletableFuture<Void> update() {
+        return update(UpdateScope.all());
+    }
 
-    protected ReentrantLock accountsLock = new ReentrantLock();
-    protected ReentrantLock accountFoldersLock = new ReentrantLock();
-    protected ReentrantLock transactionCategoriesLock = new ReentrantLock();
-    protected ReentrantLock currenciesLock = new ReentrantLock();
+    public CompletableFuture<Void> update(Set<UpdateScope> scopes) {
+        ArrayList<CompletableFuture<?>> futures = new ArrayList<>();
 
-    public ClientState(FinWaveClient client) {
-        this.client = client;
+        if (scopes.contains(UpdateScope.ACCOUNTS))
+            futures.add(updateAccounts());
 
-        this.configsFuture = client.runRequest(new ConfigApi.GetConfigsRequest());
-    }
+        if (scopes.contains(UpdateScope.ACCOUNT_FOLDERS))
+            futures.add(updateAccountFolders());
 
-    public CompletableFuture<Void> update() {
-        return CompletableFuture.allOf(
-                updateAccounts(),
-                updateAccountFolders(),
-                updateCurrencies(),
-                updateTransactionCategories()
-        );
+        if (scopes.contains(UpdateScope.CURRENCIES))
+            futures.add(updateCurrencies());
+
+        if (scopes.contains(UpdateScope.CATEGORIES))
+            futures.add(updateTransactionCategories());
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
     }
 
     public Optional<ConfigApi.PublicConfigs> getConfigs() {
-        if (configs == null && !configsFuture.isCompletedExceptionally()) {
-            try {
-                configs = configsFuture.get();
-            } catch (InterruptedException | ExecutionException ignored) { }
-        }
+        return configsCache.get(apiUrl);
+    }
 
-        return Optional.ofNullable(configs);
+    public boolean isAiAvailable() {
+        return configsCache.isAiAvailable(apiUrl);
     }
 
     public CompletableFuture<List<AccountFolderApi.FolderEntry>> updateAccountFolders() {
-        return client.runRequest(new AccountFolderApi.GetFoldersRequest())
+        return flights.run(UpdateScope.ACCOUNT_FOLDERS, () -> client.runRequest(new AccountFolderApi.GetFoldersRequest())
                 .thenApply(AccountFolderApi.GetFoldersResponse::folders).whenComplete((r, t) -> {
                     if (t != null) {
-                        t.printStackTrace();
+                        log.warn("Failed to update account folders: {}", t.toString());
                         return;
                     }
 
-                    HashMap<Long, AccountFolderApi.FolderEntry> newMap = new HashMap<>();
-                    r.forEach((f) -> newMap.put(f.folderId(), f));
-
-                    accountFoldersLock.lock();
-
-                    accountFolders = r;
-                    accountFoldersMap = newMap;
-
-                    accountFoldersLock.unlock();
-                });
+                    snapshot.updateAndGet((s) -> s.withAccountFolders(r));
+                })
+        );
     }
 
     public CompletableFuture<List<AccountApi.AccountEntry>> updateAccounts() {
-        return client.runRequest(new AccountApi.GetAccountsRequest())
+        return flights.run(UpdateScope.ACCOUNTS, () -> client.runRequest(new AccountApi.GetAccountsRequest())
                 .thenApply(AccountApi.GetAccountsListResponse::accounts).whenComplete((r, t) -> {
                     if (t != null) {
-                        t.printStackTrace();
+                        log.warn("Failed to update accounts: {}", t.toString());
                         return;
                     }
 
-                    HashMap<Long, AccountApi.AccountEntry> newMap = new HashMap<>();
-                    r.forEach((a) -> newMap.put(a.accountId(), a));
-
-                    accountsLock.lock();
-
-                    accounts = r;
-                    accountsMap = newMap;
-
-                    accountsLock.unlock();
-                });
+                    snapshot.updateAndGet((s) -> s.withAccounts(r));
+                })
+        );
     }
 
     public CompletableFuture<List<TransactionCategoryApi.CategoryEntry>> updateTransactionCategories() {
-        return client.runRequest(new TransactionCategoryApi.GetCategoriesRequest())
+        return flights.run(UpdateScope.CATEGORIES, () -> client.runRequest(new TransactionCategoryApi.GetCategoriesRequest())
                 .thenApply(TransactionCategoryApi.GetCategoriesResponse::categories).whenComplete((r, t) -> {
                     if (t != null) {
-                        t.printStackTrace();
+                        log.warn("Failed to update transaction categories: {}", t.toString());
                         return;
                     }
 
-                    HashMap<Long, TransactionCategoryApi.CategoryEntry> newMap = new HashMap<>();
-                    r.forEach((c) -> newMap.put(c.categoryId(), c));
-
-                    transactionCategoriesLock.lock();
-
-                    transactionCategories = r;
-                    transactionCategoriesMap = newMap;
-
-                    transactionCategoriesLock.unlock();
-                });
+                    snapshot.updateAndGet((s) -> s.withTransactionCategories(r));
+                })
+        );
     }
 
     public CompletableFuture<List<CurrencyApi.CurrencyEntry>> updateCurrencies() {
-        return client.runRequest(new CurrencyApi.GetCurrenciesRequest())
+        return flights.run(UpdateScope.CURRENCIES, () -> client.runRequest(new CurrencyApi.GetCurrenciesRequest())
                 .thenApply(CurrencyApi.GetCurrenciesResponse::currencies).whenComplete((r, t) -> {
                     if (t != null) {
-                        t.printStackTrace();
+                        log.warn("Failed to update currencies: {}", t.toString());
                         return;
                     }
 
-                    HashMap<Long, CurrencyApi.CurrencyEntry> newMap = new HashMap<>();
-                    r.forEach((c) -> newMap.put(c.currencyId(), c));
-
-                    currenciesLock.lock();
-
-                    currencies = r;
-                    currenciesMap = newMap;
-
-                    currenciesLock.unlock();
-                });
+                    snapshot.updateAndGet((s) -> s.withCurrencies(r));
+                })
+        );
     }
 
     public CompletableFuture<List<Transaction>> fetchLastTransactions(int count) {
-        return client.runRequest(new TransactionApi.GetTransactionsRequest(0, count, TransactionsFilter.EMPTY))
-                .thenApply(TransactionApi.GetTransactionsListResponse::transactions);
+        return flights.run(List.of(UpdateScope.TRANSACTIONS, count), () -> client.runRequest(new TransactionApi.GetTransactionsRequest(0, count, TransactionsFilter.EMPTY))
+                .thenApply(TransactionApi.GetTransactionsListResponse::transactions)
+        );
     }
 
     public CompletableFuture<List<NoteApi.NoteEntry>> fetchImportantNotes() {
-        return client.runRequest(new NoteApi.GetImportantNotesRequest())
-                .thenApply(NoteApi.GetNotesListResponse::notes);
+        return flights.run(UpdateScope.NOTES, () -> client.runRequest(new NoteApi.GetImportantNotesRequest())
+                .thenApply(NoteApi.GetNotesListResponse::notes)
+        );
     }
 
-    public String formatAmount(BigDecimal amount, long accountId, boolean addPlus, boolean hide) {
-        if (hide)
-            return "▒▒▒▒";
-
-        AccountApi.AccountEntry account;
-        CurrencyApi.CurrencyEntry currency;
-
-        accountsLock.lock();
-        currenciesLock.lock();
-
-        try {
-            account = accountsMap.get(accountId);
-            currency = currenciesMap.get(account.currencyId());
-        }finally {
-            accountsLock.unlock();
-            currenciesLock.unlock();
-        }
-
-        DecimalFormat df = new DecimalFormat();
-        StringBuilder builder = new StringBuilder();
-
-        return builder
-                .append(amount.signum() > 0 && addPlus ? "+" : "")
-                .append(df.format(amount.setScale(currency.decimals(), RoundingMode.HALF_UP).doubleValue()))
-                .append(currency.symbol())
-                .toString();
+    public void forgetInFlight() {
+        flights.forget();
     }
 
-    public HashMap<AccountFolderApi.FolderEntry, ArrayList<AccountApi.AccountEntry>> getAccountsByTags() {
-        HashMap<AccountFolderApi.FolderEntry, ArrayList<AccountApi.AccountEntry>> accountsByFolders = new HashMap<>();
-
-        accountsLock.lock();
-        accountFoldersLock.lock();
-
-        try {
-            accounts.forEach((a) -> {
-                AccountFolderApi.FolderEntry folder = accountFoldersMap.get(a.folderId());
+    public String formatAmount(BigDecimal amount, long accountId, boolean addPlus, boolean hide) {
+        return snapshot.get().formatAmount(amount, accountId, addPlus, hide);
+    }
 
-                if (!accountsByFolders.containsKey(folder))
-                    accountsByFolders.put(folder, new ArrayList<>());
+    public void restore(ClientStateSnapshot restored) {
+        snapshot.compareAndSet(ClientStateSnapshot.EMPTY, restored);
+    }
 
-                accountsByFolders.get(folder).add(a);
-            });
-        }finally {
-            accountsLock.unlock();
-            accountFoldersLock.unlock();
-        }
+    public ClientStateSnapshot getSnapshot() {
+        return snapshot.get();
+    }
 
-        return accountsByFolders;
+    public Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> getAccountsByTags() {
+        return snapshot.get().getAccountsByFolder();
     }
 
     public List<AccountFolderApi.FolderEntry> getAccountFolders() {
-        accountFoldersLock.lock();
-
-        try {
-            return Collections.unmodifiableList(accountFolders);
-        }finally {
-            accountFoldersLock.unlock();
-        }
+        return snapshot.get().getAccountFolders();
     }
 
     public List<AccountApi.AccountEntry> getAccounts() {
-        accountsLock.lock();
-
-        try {
-            return Collections.unmodifiableList(accounts);
-        }finally {
-            accountsLock.unlock();
-        }
+        return snapshot.get().getAccounts();
     }
 
     public List<TransactionCategoryApi.CategoryEntry> getTransactionCategories() {
-        transactionCategoriesLock.lock();
-
-        try {
-            return Collections.unmodifiableList(transactionCategories);
-        }finally {
-            transactionCategoriesLock.unlock();
-        }
+        return snapshot.get().getTransactionCategories();
     }
 
     public Map<Long, AccountApi.AccountEntry> getAccountsMap() {
-        accountsLock.lock();
-
-        try {
-            return Collections.unmodifiableMap(accountsMap);
-        }finally {
-            accountsLock.unlock();
-        }
+        return snapshot.get().getAccountsMap();
     }
 
     public Map<Long, AccountFolderApi.FolderEntry> getAccountFoldersMap() {
-        accountFoldersLock.lock();
-
-        try {
-            return Collections.unmodifiableMap(accountFoldersMap);
-        }finally {
-            accountFoldersLock.unlock();
-        }
+        return snapshot.get().getAccountFoldersMap();
     }
 
     public List<CurrencyApi.CurrencyEntry> getCurrencies() {
-        currenciesLock.lock();
-
-        try {
-            return Collections.unmodifiableList(currencies);
-        }finally {
-            currenciesLock.unlock();
-        }
+        return snapshot.get().getCurrencies();
     }
 
     public Map<Long, CurrencyApi.CurrencyEntry> getCurrenciesMap() {
-        currenciesLock.lock();
-
-        try {
-            return Collections.unmodifiableMap(currenciesMap);
-        }finally {
-            currenciesLock.unlock();
-        }
+        return snapshot.get().getCurrenciesMap();
     }
 
     public Map<Long, TransactionCategoryApi.CategoryEntry> getTransactionCategoriesMap() {
-        transactionCategoriesLock.lock();
-
-        try {
-            return Collections.unmodifiableMap(transactionCategoriesMap);
-        }finally {
-            transactionCategoriesLock.unlock();
-        }
+        return snapshot.get().getTransactionCategoriesMap();
     }
 }
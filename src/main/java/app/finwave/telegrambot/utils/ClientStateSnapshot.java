@@ -0,0 +1,214 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.AccountApi;
+import app.finwave.api.AccountFolderApi;
+import app.finwave.api.CurrencyApi;
+import app.finwave.api.TransactionCategoryApi;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+public final class ClientStateSnapshot {
+    public static final ClientStateSnapshot EMPTY = new ClientStateSnapshot(0, List.of(), List.of(), List.of(), List.of());
+
+    protected final long version;
+
+    protected final List<AccountFolderApi.FolderEntry> accountFolders;
+    protected final List<AccountApi.AccountEntry> accounts;
+    protected final List<TransactionCategoryApi.CategoryEntry> transactionCategories;
+    protected final List<CurrencyApi.CurrencyEntry> currencies;
+
+    protected final LongIndex<AccountFolderApi.FolderEntry> accountFoldersMap;
+    protected final LongIndex<AccountApi.AccountEntry> accountsMap;
+    protected final LongIndex<TransactionCategoryApi.CategoryEntry> transactionCategoriesMap;
+    protected final LongIndex<CurrencyApi.CurrencyEntry> currenciesMap;
+    protected final LongIndex<MoneyFormatter> formatters;
+
+    protected final List<AccountApi.AccountEntry> visibleAccounts;
+    protected final Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> accountsByFolder;
+    protected final Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> visibleAccountsByFolder;
+
+    // built on first use by the parser, snapshots without messages never pay for them
+    protected volatile NameIndex<AccountApi.AccountEntry> accountsIndex;
+    protected volatile NameIndex<TransactionCategoryApi.CategoryEntry> categoriesIndex;
+
+    protected ClientStateSnapshot(long version,
+                                  List<AccountFolderApi.FolderEntry> accountFolders,
+                                  List<AccountApi.AccountEntry> accounts,
+                                  List<TransactionCategoryApi.CategoryEntry> transactionCategories,
+                                  List<CurrencyApi.CurrencyEntry> currencies) {
+        this.version = version;
+
+        this.accountFolders = List.copyOf(accountFolders);
+        this.accounts = List.copyOf(accounts);
+        this.transactionCategories = List.copyOf(transactionCategories);
+        this.currencies = List.copyOf(currencies);
+
+        this.accountFoldersMap = index(this.accountFolders, AccountFolderApi.FolderEntry::folderId);
+        this.accountsMap = index(this.accounts, AccountApi.AccountEntry::accountId);
+        this.transactionCategoriesMap = index(this.transactionCategories, TransactionCategoryApi.CategoryEntry::categoryId);
+        this.currenciesMap = index(this.currencies, CurrencyApi.CurrencyEntry::currencyId);
+        this.formatters = buildFormatters(this.currencies);
+
+        this.visibleAccounts = this.accounts.stream().filter((a) -> !a.hidden()).toList();
+        this.accountsByFolder = groupByFolder(false);
+        this.visibleAccountsByFolder = groupByFolder(true);
+    }
+
+    public static ClientStateSnapshot of(List<AccountFolderApi.FolderEntry> accountFolders,
+                                         List<AccountApi.AccountEntry> accounts,
+                                         List<TransactionCategoryApi.CategoryEntry> transactionCategories,
+                                         List<CurrencyApi.CurrencyEntry> currencies) {
+        return new ClientStateSnapshot(1, accountFolders, accounts, transactionCategories, currencies);
+    }
+
+    protected static <T> LongIndex<T> index(List<T> entries, ToLongFunction<T> idGetter) {
+        return LongIndex.of(entries, idGetter);
+    }
+
+    protected static LongIndex<MoneyFormatter> buildFormatters(List<CurrencyApi.CurrencyEntry> currencies) {
+        return LongIndex.of(currencies, CurrencyApi.CurrencyEntry::currencyId, (c) -> new MoneyFormatter(c.decimals(), c.symbol()));
+    }
+
+    protected Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> groupByFolder(boolean onlyVisible) {
+        LinkedHashMap<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> result = new LinkedHashMap<>();
+
+        for (AccountApi.AccountEntry account : accounts) {
+            AccountFolderApi.FolderEntry folder = accountFoldersMap.get(account.folderId());
+
+            // folders may arrive later than accounts, skip until both are known
+            if (folder == null)
+                continue;
+
+            List<AccountApi.AccountEntry> folderAccounts = result.computeIfAbsent(folder, (f) -> new ArrayList<>());
+
+            if (!onlyVisible || !account.hidden())
+                folderAccounts.add(account);
+        }
+
+        result.replaceAll((f, l) -> List.copyOf(l));
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    // unchanged data keeps the current snapshot, so the version only moves on real changes
+    public ClientStateSnapshot withAccountFolders(List<AccountFolderApi.FolderEntry> accountFolders) {
+        if (this.accountFolders.equals(accountFolders))
+            return this;
+
+        return new ClientStateSnapshot(version + 1, accountFolders, accounts, transactionCategories, currencies);
+    }
+
+    public ClientStateSnapshot withAccounts(List<AccountApi.AccountEntry> accounts) {
+        if (this.accounts.equals(accounts))
+            return this;
+
+        return new ClientStateSnapshot(version + 1, accountFolders, accounts, transactionCategories, currencies);
+    }
+
+    public ClientStateSnapshot withTransactionCategories(List<TransactionCategoryApi.CategoryEntry> transactionCategories) {
+        if (this.transactionCategories.equals(transactionCategories))
+            return this;
+
+        return new ClientStateSnapshot(version + 1, accountFolders, accounts, transactionCategories, currencies);
+    }
+
+    public ClientStateSnapshot withCurrencies(List<CurrencyApi.CurrencyEntry> currencies) {
+        if (this.currencies.equals(currencies))
+            return this;
+
+        return new ClientStateSnapshot(version + 1, accountFolders, accounts, transactionCategories, currencies);
+    }
+
+    public StringBuilder formatAmount(StringBuilder out, BigDecimal amount, long accountId, boolean addPlus, boolean hide) {
+        if (hide)
+            return out.append("▒▒▒▒");
+
+        AccountApi.AccountEntry account = accountsMap.get(accountId);
+
+        return formatters.get(account.currencyId()).format(amount, addPlus, out);
+    }
+
+    public String formatAmount(BigDecimal amount, long accountId, boolean addPlus, boolean hide) {
+        return formatAmount(new StringBuilder(24), amount, accountId, addPlus, hide).toString();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<AccountFolderApi.FolderEntry> getAccountFolders() {
+        return accountFolders;
+    }
+
+    public List<AccountApi.AccountEntry> getAccounts() {
+        return accounts;
+    }
+
+    public List<AccountApi.AccountEntry> getVisibleAccounts() {
+        return visibleAccounts;
+    }
+
+    public List<TransactionCategoryApi.CategoryEntry> getTransactionCategories() {
+        return transactionCategories;
+    }
+
+    public List<CurrencyApi.CurrencyEntry> getCurrencies() {
+        return currencies;
+    }
+
+    public LongIndex<AccountFolderApi.FolderEntry> getAccountFoldersMap() {
+        return accountFoldersMap;
+    }
+
+    public LongIndex<AccountApi.AccountEntry> getAccountsMap() {
+        return accountsMap;
+    }
+
+    public LongIndex<TransactionCategoryApi.CategoryEntry> getTransactionCategoriesMap() {
+        return transactionCategoriesMap;
+    }
+
+    public LongIndex<CurrencyApi.CurrencyEntry> getCurrenciesMap() {
+        return currenciesMap;
+    }
+
+    public LongIndex<MoneyFormatter> getFormatters() {
+        return formatters;
+    }
+
+    public NameIndex<AccountApi.AccountEntry> getAccountsIndex() {
+        NameIndex<AccountApi.AccountEntry> index = accountsIndex;
+
+        if (index == null) {
+            List<AccountApi.AccountEntry> indexed = accounts.stream()
+                    .filter((a) -> accountFoldersMap.containsKey(a.folderId()))
+                    .toList();
+
+            index = new NameIndex<>(indexed, (a) -> accountFoldersMap.get(a.folderId()).name().trim() + " " + a.name().trim());
+            accountsIndex = index;
+        }
+
+        return index;
+    }
+
+    public NameIndex<TransactionCategoryApi.CategoryEntry> getCategoriesIndex() {
+        NameIndex<TransactionCategoryApi.CategoryEntry> index = categoriesIndex;
+
+        if (index == null) {
+            index = new NameIndex<>(transactionCategories, TransactionCategoryApi.CategoryEntry::name);
+            categoriesIndex = index;
+        }
+
+        return index;
+    }
+
+    public Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> getAccountsByFolder() {
+        return accountsByFolder;
+    }
+
+    public Map<AccountFolderApi.FolderEntry, List<AccountApi.AccountEntry>> getVisibleAccountsByFolder() {
+        return visibleAccountsByFolder;
+    }
+}
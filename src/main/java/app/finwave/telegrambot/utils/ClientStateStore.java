@@ -0,0 +1,247 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.AccountApi;
+import app.finwave.api.AccountFolderApi;
+import app.finwave.api.CurrencyApi;
+import app.finwave.api.NoteApi;
+import app.finwave.api.TransactionCategoryApi;
+import app.finwave.api.tools.Transaction;
+import app.finwave.telegrambot.config.CommonConfig;
+import app.finwave.telegrambot.config.ConfigWorker;
+import app.finwave.telegrambot.jooq.tables.records.ChatsRecord;
+import com.google.common.hash.Hashing;
+import com.google.gson.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Singleton
+public class ClientStateStore {
+    protected static final Logger log = LoggerFactory.getLogger(ClientStateStore.class);
+
+    protected static final int MAGIC = 0x46575353; // "FWSS"
+    protected static final int MODEL_MAGIC = 0x4657434D; // "FWCM"
+    protected static final short FORMAT_VERSION = 1;
+
+    protected CommonConfig.StateSnapshotsConfig config;
+    protected Path directory;
+
+    protected Gson gson = new GsonBuilder()
+            .registerTypeAdapter(OffsetDateTime.class, (JsonSerializer<OffsetDateTime>) (src, type, context) -> new JsonPrimitive(src.toString()))
+            .registerTypeAdapter(OffsetDateTime.class, (JsonDeserializer<OffsetDateTime>) (json, type, context) -> OffsetDateTime.parse(json.getAsString()))
+            .create();
+
+    protected ExecutorService writer = Executors.newSingleThreadExecutor((r) -> {
+        Thread thread = new Thread(r, "state-snapshots-writer");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    @Inject
+    public ClientStateStore(ConfigWorker configWorker) {
+        this.config = configWorker.commonConfig.stateSnapshots;
+        this.directory = Path.of(config.path);
+
+        if (!config.enabled)
+            return;
+
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            log.warn("Failed to create state snapshots directory, snapshots disabled", e);
+
+            config.enabled = false;
+        }
+    }
+
+    public record StoredState(ClientStateSnapshot snapshot, List<Transaction> lastTransactions, List<NoteApi.NoteEntry> notes, long savedAt) {}
+
+    protected record Payload(List<AccountFolderApi.FolderEntry> accountFolders,
+                             List<AccountApi.AccountEntry> accounts,
+                             List<TransactionCategoryApi.CategoryEntry> transactionCategories,
+                             List<CurrencyApi.CurrencyEntry> currencies,
+                             List<Transaction> lastTransactions,
+                             List<NoteApi.NoteEntry> notes) {}
+
+    public void save(long chatId, ChatsRecord chat, ClientStateSnapshot snapshot, List<Transaction> lastTransactions, List<NoteApi.NoteEntry> notes) {
+        if (!config.enabled)
+            return;
+
+        Payload payload = new Payload(
+                snapshot.getAccountFolders(),
+                snapshot.getAccounts(),
+                snapshot.getTransactionCategories(),
+                snapshot.getCurrencies(),
+                List.copyOf(lastTransactions),
+                List.copyOf(notes)
+        );
+
+        writer.execute(() -> {
+            Path target = fileOf(chatId);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeHeader(out, MAGIC, chat);
+
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                Writer json = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+                gson.toJson(payload, json);
+                json.flush();
+                gzip.finish();
+            } catch (IOException | JsonIOException e) {
+                log.warn("Failed to write state snapshot of chat {}", chatId, e);
+
+                return;
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Failed to replace state snapshot of chat {}", chatId, e);
+            }
+        });
+    }
+
+    public Optional<StoredState> load(long chatId, ChatsRecord chat) {
+        if (!config.enabled)
+            return Optional.empty();
+
+        Path file = fileOf(chatId);
+
+        if (!Files.exists(file))
+            return Optional.empty();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long savedAt = readHeader(in, MAGIC, chat);
+
+            if (savedAt == -1 || System.currentTimeMillis() - savedAt > config.maxAge)
+                return Optional.empty();
+
+            Payload payload = gson.fromJson(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8), Payload.class);
+
+            ClientStateSnapshot snapshot = ClientStateSnapshot.of(
+                    payload.accountFolders(),
+                    payload.accounts(),
+                    payload.transactionCategories(),
+                    payload.currencies()
+            );
+
+            return Optional.of(new StoredState(snapshot, payload.lastTransactions(), payload.notes(), savedAt));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read state snapshot of chat {}, ignoring it", chatId, e);
+
+            return Optional.empty();
+        }
+    }
+
+    // the model outlives snapshots, it is only dropped with the session it was learned under
+    public void saveModel(long chatId, ChatsRecord chat, CategoryModel model) {
+        if (!config.enabled)
+            return;
+
+        writer.execute(() -> {
+            Path target = modelFileOf(chatId);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeHeader(out, MODEL_MAGIC, chat);
+                model.write(out);
+            } catch (IOException e) {
+                log.warn("Failed to write category model of chat {}", chatId, e);
+
+                return;
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Failed to replace category model of chat {}", chatId, e);
+            }
+        });
+    }
+
+    public Optional<CategoryModel> loadModel(long chatId, ChatsRecord chat, CommonConfig.PredictionConfig predictionConfig) {
+        if (!config.enabled)
+            return Optional.empty();
+
+        Path file = modelFileOf(chatId);
+
+        if (!Files.exists(file))
+            return Optional.empty();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (readHeader(in, MODEL_MAGIC, chat) == -1)
+                return Optional.empty();
+
+            return Optional.of(CategoryModel.read(in, predictionConfig));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read category model of chat {}, ignoring it", chatId, e);
+
+            return Optional.empty();
+        }
+    }
+
+    public void delete(long chatId) {
+        if (!config.enabled)
+            return;
+
+        writer.execute(() -> {
+            try {
+                Files.deleteIfExists(fileOf(chatId));
+                Files.deleteIfExists(modelFileOf(chatId));
+            } catch (IOException e) {
+                log.warn("Failed to delete state snapshot of chat {}", chatId, e);
+            }
+        });
+    }
+
+    protected void writeHeader(DataOutputStream out, int magic, ChatsRecord chat) throws IOException {
+        out.writeInt(magic);
+        out.writeShort(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(chat.getApiUrl());
+        out.writeUTF(sessionHash(chat));
+        out.flush();
+    }
+
+    // returns save time or -1 if the snapshot belongs to another format, server or session
+    protected long readHeader(DataInputStream in, int magic, ChatsRecord chat) throws IOException {
+        if (in.readInt() != magic || in.readShort() != FORMAT_VERSION)
+            return -1;
+
+        long savedAt = in.readLong();
+
+        if (!in.readUTF().equals(chat.getApiUrl()) || !in.readUTF().equals(sessionHash(chat)))
+            return -1;
+
+        return savedAt;
+    }
+
+    // the session is a credential, so only its hash goes to disk
+    protected String sessionHash(ChatsRecord chat) {
+        return Hashing.sha256().hashString(chat.getApiSession(), StandardCharsets.UTF_8).toString();
+    }
+
+    protected Path fileOf(long chatId) {
+        return directory.resolve(chatId + ".state");
+    }
+
+    protected Path modelFileOf(long chatId) {
+        return directory.resolve(chatId + ".model");
+    }
+}
@@ -0,0 +1,52 @@
+package app.finwave.telegrambot.utils;
+
+import java.util.concurrent.*;
+
+public class Interaction {
+    protected final long deadline;
+    protected final ConcurrentLinkedQueue<CompletableFuture<?>> tracked = new ConcurrentLinkedQueue<>();
+    protected volatile boolean cancelled;
+
+    public Interaction(long budgetMillis) {
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        tracked.add(future);
+        future.whenComplete((r, t) -> tracked.remove(future));
+
+        if (cancelled)
+            future.cancel(true);
+
+        return future;
+    }
+
+    public <T> T await(CompletableFuture<T> future) throws InterruptedException, ExecutionException, TimeoutException {
+        track(future);
+
+        try {
+            return future.get(remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+
+            throw e;
+        }
+    }
+
+    public long remainingMillis() {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+
+        CompletableFuture<?> future;
+
+        while ((future = tracked.poll()) != null)
+            future.cancel(true);
+    }
+}
@@ -0,0 +1,123 @@
+package app.finwave.telegrambot.utils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+public final class LongIndex<T> extends AbstractMap<Long, T> {
+    protected static final LongIndex<?> EMPTY = new LongIndex<>(new long[0], new Object[0]);
+
+    protected final long[] ids;
+    protected final Object[] values;
+
+    protected LongIndex(long[] ids, Object[] values) {
+        this.ids = ids;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> LongIndex<T> empty() {
+        return (LongIndex<T>) EMPTY;
+    }
+
+    public static <T> LongIndex<T> of(List<T> entries, ToLongFunction<T> idGetter) {
+        return of(entries, idGetter, Function.identity());
+    }
+
+    public static <E, T> LongIndex<T> of(List<E> entries, ToLongFunction<E> idGetter, Function<E, T> mapper) {
+        if (entries.isEmpty())
+            return empty();
+
+        Integer[] order = new Integer[entries.size()];
+
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+
+        Arrays.sort(order, Comparator.comparingLong((i) -> idGetter.applyAsLong(entries.get(i))));
+
+        long[] ids = new long[order.length];
+        Object[] values = new Object[order.length];
+        int size = 0;
+
+        for (int i : order) {
+            long id = idGetter.applyAsLong(entries.get(i));
+
+            // later duplicates win, same as HashMap.put did
+            if (size > 0 && ids[size - 1] == id) {
+                values[size - 1] = mapper.apply(entries.get(i));
+                continue;
+            }
+
+            ids[size] = id;
+            values[size] = mapper.apply(entries.get(i));
+            size++;
+        }
+
+        if (size != ids.length) {
+            ids = Arrays.copyOf(ids, size);
+            values = Arrays.copyOf(values, size);
+        }
+
+        return new LongIndex<>(ids, values);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long id) {
+        int position = Arrays.binarySearch(ids, id);
+
+        return position < 0 ? null : (T) values[position];
+    }
+
+    public boolean containsKey(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public T get(Object key) {
+        return key instanceof Long id ? get(id.longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long id && containsKey(id.longValue());
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public Set<Entry<Long, T>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Long, T>> iterator() {
+                return new Iterator<>() {
+                    int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < ids.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<Long, T> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+
+                        Entry<Long, T> entry = new SimpleImmutableEntry<>(ids[position], (T) values[position]);
+                        position++;
+
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package app.finwave.telegrambot.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+
+public final class MoneyFormatter {
+    protected static final DecimalFormatSymbols SYMBOLS = DecimalFormatSymbols.getInstance();
+    protected static final int GROUPING_SIZE = 3;
+
+    // DecimalFormat's default, which the amounts were always rendered with
+    protected static final int MAX_FRACTION_DIGITS = 3;
+
+    protected static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    protected final int decimals;
+    protected final int shownDigits;
+    protected final String symbol;
+    protected final char groupingSeparator;
+    protected final char decimalSeparator;
+    protected final char minusSign;
+
+    public MoneyFormatter(int decimals, String symbol) {
+        this.decimals = Math.max(decimals, 0);
+        this.shownDigits = Math.min(this.decimals, MAX_FRACTION_DIGITS);
+        this.symbol = symbol;
+        this.groupingSeparator = SYMBOLS.getGroupingSeparator();
+        this.decimalSeparator = SYMBOLS.getDecimalSeparator();
+        this.minusSign = SYMBOLS.getMinusSign();
+    }
+
+    public StringBuilder format(BigDecimal amount, boolean addPlus, StringBuilder out) {
+        // amounts already within the shown digits need no rounding, setScale would only pad zeros that are stripped again
+        BigDecimal scaled = amount.scale() >= 0 && amount.scale() <= shownDigits ? amount : round(amount);
+
+        if (scaled.signum() > 0 && addPlus)
+            out.append('+');
+
+        // unscaled values up to 18 digits fit a long and are written digit by digit, bigger ones go through the plain string
+        if (scaled.precision() <= 18) {
+            appendCompact(scaled.unscaledValue().longValue(), scaled.scale(), out);
+        } else {
+            appendPlain(scaled.toPlainString(), out);
+        }
+
+        return out.append(symbol);
+    }
+
+    protected BigDecimal round(BigDecimal amount) {
+        BigDecimal scaled = amount.setScale(decimals, RoundingMode.HALF_UP);
+
+        return decimals > MAX_FRACTION_DIGITS ? scaled.setScale(MAX_FRACTION_DIGITS, RoundingMode.HALF_EVEN) : scaled;
+    }
+
+    public String format(BigDecimal amount, boolean addPlus) {
+        return format(amount, addPlus, new StringBuilder(24)).toString();
+    }
+
+    protected void appendCompact(long unscaled, int scale, StringBuilder out) {
+        if (unscaled < 0) {
+            out.append(minusSign);
+            unscaled = -unscaled;
+        }
+
+        int fractionDigits = scale;
+
+        while (fractionDigits > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            fractionDigits--;
+        }
+
+        long divisor = POWERS_OF_TEN[fractionDigits];
+        long integer = unscaled / divisor;
+        long fraction = unscaled % divisor;
+
+        int integerDigits = 1;
+
+        while (integerDigits < POWERS_OF_TEN.length && integer >= POWERS_OF_TEN[integerDigits])
+            integerDigits++;
+
+        for (int i = integerDigits - 1; i >= 0; i--) {
+            out.append((char) ('0' + integer / POWERS_OF_TEN[i] % 10));
+
+            if (i > 0 && i % GROUPING_SIZE == 0)
+                out.append(groupingSeparator);
+        }
+
+        if (fractionDigits == 0)
+            return;
+
+        out.append(decimalSeparator);
+
+        for (int i = fractionDigits - 1; i >= 0; i--)
+            out.append((char) ('0' + fraction / POWERS_OF_TEN[i] % 10));
+    }
+
+    protected void appendPlain(String plain, StringBuilder out) {
+        int start = 0;
+
+        if (plain.charAt(0) == '-') {
+            out.append(minusSign);
+            start = 1;
+        }
+
+        int point = plain.indexOf('.');
+        int integerEnd = point == -1 ? plain.length() : point;
+        int fractionEnd = plain.length();
+
+        while (point != -1 && fractionEnd > point + 1 && plain.charAt(fractionEnd - 1) == '0')
+            fractionEnd--;
+
+        for (int i = start; i < integerEnd; i++) {
+            out.append(plain.charAt(i));
+
+            int left = integerEnd - i - 1;
+
+            if (left > 0 && left % GROUPING_SIZE == 0)
+                out.append(groupingSeparator);
+        }
+
+        if (point == -1 || fractionEnd == point + 1)
+            return;
+
+        out.append(decimalSeparator).append(plain, point + 1, fractionEnd);
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+}
@@ -0,0 +1,113 @@
+package app.finwave.telegrambot.utils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+public class NameIndex<T> {
+    protected static final int GRAM_SIZE = 3;
+    protected static final int[] NO_POSTINGS = new int[0];
+
+    protected final List<T> entries;
+    protected final int[] wordCounts;
+    protected final int[] gramCounts;
+
+    protected final HashMap<String, Integer> gramIds = new HashMap<>();
+    protected final int[][] postings;
+
+    public NameIndex(List<T> entries, Function<T, String> nameOf) {
+        this.entries = List.copyOf(entries);
+        this.wordCounts = new int[entries.size()];
+        this.gramCounts = new int[entries.size()];
+
+        ArrayList<ArrayList<Integer>> postingLists = new ArrayList<>();
+
+        for (int i = 0; i < this.entries.size(); i++) {
+            String name = nameOf.apply(this.entries.get(i));
+
+            wordCounts[i] = name.trim().split(" ").length;
+
+            Set<String> grams = gramsOf(name);
+            gramCounts[i] = grams.size();
+
+            for (String gram : grams) {
+                int id = gramIds.computeIfAbsent(gram, (g) -> {
+                    postingLists.add(new ArrayList<>());
+
+                    return postingLists.size() - 1;
+                });
+
+                postingLists.get(id).add(i);
+            }
+        }
+
+        this.postings = new int[postingLists.size()][];
+
+        for (int i = 0; i < postings.length; i++)
+            postings[i] = postingLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // character trigrams of every lowercased word, padded with spaces so short words still produce grams
+    public static Set<String> gramsOf(String text) {
+        HashSet<String> grams = new HashSet<>();
+
+        for (String word : text.toLowerCase().split(" ")) {
+            if (word.isEmpty())
+                continue;
+
+            String padded = " " + word + " ";
+
+            for (int i = 0; i + GRAM_SIZE <= padded.length(); i++)
+                grams.add(padded.substring(i, i + GRAM_SIZE));
+        }
+
+        return grams;
+    }
+
+    public interface ScoreConsumer<T> {
+        void accept(T entry, int position, double score);
+    }
+
+    // scores only entries sharing at least one gram with their word window around center, by gram Jaccard similarity
+    public void score(List<String> words, int center, IntUnaryOperator windowOf, ScoreConsumer<T> consumer) {
+        HashMap<Integer, Set<String>> windows = new HashMap<>();
+        int[] shared = new int[entries.size()];
+        BitSet candidates = new BitSet(entries.size());
+
+        for (int size : Arrays.stream(wordCounts).map(windowOf).distinct().toArray()) {
+            Set<String> window = gramsOf(String.join(" ", words.subList(
+                    Math.max(0, center - size),
+                    Math.min(words.size(), center + size + 1)
+            )));
+
+            windows.put(size, window);
+
+            for (String gram : window) {
+                Integer id = gramIds.get(gram);
+
+                for (int position : id == null ? NO_POSTINGS : postings[id]) {
+                    if (windowOf.applyAsInt(wordCounts[position]) != size)
+                        continue;
+
+                    shared[position]++;
+                    candidates.set(position);
+                }
+            }
+        }
+
+        for (int position = candidates.nextSetBit(0); position >= 0; position = candidates.nextSetBit(position + 1)) {
+            int windowSize = windows.get(windowOf.applyAsInt(wordCounts[position])).size();
+            double score = (double) shared[position] / (windowSize + gramCounts[position] - shared[position]);
+
+            consumer.accept(entries.get(position), position, score);
+        }
+    }
+
+    public int getWordCount(int position) {
+        return wordCounts[position];
+    }
+
+    public List<T> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,46 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.telegrambot.config.CommonConfig;
+
+import java.util.concurrent.*;
+
+public class RefreshScheduler {
+    protected static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread thread = new Thread(r, "refresh-scheduler");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    protected CommonConfig.RefreshConfig config;
+    protected Runnable revalidate;
+
+    protected ScheduledFuture<?> scheduled;
+
+    public RefreshScheduler(CommonConfig.RefreshConfig config, Runnable revalidate) {
+        this.config = config;
+        this.revalidate = revalidate;
+    }
+
+    public boolean isStale(long lastRefresh) {
+        return System.currentTimeMillis() - lastRefresh > config.staleAfter;
+    }
+
+    public synchronized void reschedule(long lastRefresh) {
+        if (scheduled != null)
+            scheduled.cancel(false);
+
+        // random jitter keeps chats refreshed at the same moment (e.g. after a restart) from hitting the API together
+        long jitter = config.jitter > 0 ? ThreadLocalRandom.current().nextLong(config.jitter) : 0;
+        long delay = Math.max(lastRefresh + config.staleAfter - System.currentTimeMillis(), 0) + jitter;
+
+        scheduled = executor.schedule(revalidate, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void cancel() {
+        if (scheduled != null)
+            scheduled.cancel(false);
+
+        scheduled = null;
+    }
+}
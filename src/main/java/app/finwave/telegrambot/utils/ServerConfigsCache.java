@@ -0,0 +1,102 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.ConfigApi;
+import app.finwave.telegrambot.api.ApiClients;
+import app.finwave.telegrambot.config.CommonConfig;
+import app.finwave.telegrambot.config.ConfigWorker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Singleton
+public class ServerConfigsCache {
+    protected static final Logger log = LoggerFactory.getLogger(ServerConfigsCache.class);
+
+    protected CommonConfig.ServerCacheConfig config;
+    protected ApiClients apiClients;
+    protected LoadingCache<String, ConfigApi.PublicConfigs> configs;
+
+    // servers whose last load failed, answered as unavailable until the entry expires instead of blocking on them again
+    protected Cache<String, Boolean> failures;
+
+    protected ExecutorService refresher = Executors.newCachedThreadPool((r) -> {
+        Thread thread = new Thread(r, "server-configs-refresher");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    @Inject
+    public ServerConfigsCache(ConfigWorker configWorker, ApiClients apiClients) {
+        this.config = configWorker.commonConfig.serverCache;
+        this.apiClients = apiClients;
+
+        // LoadingCache collapses concurrent misses into one load, refreshAfterWrite serves the old value while reloading
+        this.configs = CacheBuilder.newBuilder()
+                .maximumSize(config.maxServers)
+                .expireAfterWrite(config.ttl, TimeUnit.MILLISECONDS)
+                .refreshAfterWrite(config.refreshAfter, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(CacheLoader.from(this::fetch), refresher));
+
+        this.failures = CacheBuilder.newBuilder()
+                .maximumSize(config.maxServers)
+                .expireAfterWrite(config.failureTtl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    protected ConfigApi.PublicConfigs fetch(String apiUrl) {
+        try {
+            return apiClients.create(apiUrl)
+                    .runRequest(new ConfigApi.GetConfigsRequest())
+                    .get(config.requestTimeout, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<ConfigApi.PublicConfigs> get(String apiUrl) {
+        if (failures.getIfPresent(apiUrl) != null)
+            return Optional.ofNullable(configs.getIfPresent(apiUrl));
+
+        try {
+            return Optional.of(configs.get(apiUrl));
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Failed to fetch public configs of {}", apiUrl, e);
+
+            failures.put(apiUrl, true);
+
+            return Optional.empty();
+        }
+    }
+
+    public boolean isAiAvailable(String apiUrl) {
+        return get(apiUrl).map((c) -> c.ai().enabled()).orElse(false);
+    }
+
+    public void prefetch(String apiUrl) {
+        if (configs.getIfPresent(apiUrl) == null && failures.getIfPresent(apiUrl) == null)
+            refresher.execute(() -> get(apiUrl));
+    }
+
+    public void invalidate(String apiUrl) {
+        configs.invalidate(apiUrl);
+        failures.invalidate(apiUrl);
+    }
+
+    public CacheStats getStats() {
+        return configs.stats();
+    }
+}
@@ -0,0 +1,48 @@
+package app.finwave.telegrambot.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+public class SingleFlight<K> {
+    protected ConcurrentHashMap<K, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> run(K key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing != null)
+            return (CompletableFuture<T>) existing;
+
+        CompletableFuture<T> started;
+
+        try {
+            started = call.get();
+        } catch (Throwable t) {
+            started = CompletableFuture.failedFuture(t);
+        }
+
+        // the key is freed before joiners are notified, so a caller reacting to the result starts a fresh fetch
+        started.whenComplete((r, t) -> {
+            inFlight.remove(key, flight);
+
+            if (t != null) {
+                flight.completeExceptionally(t);
+            } else {
+                flight.complete(r);
+            }
+        });
+
+        return flight;
+    }
+
+    // later callers start new flights, callers already waiting still get the old result
+    public void forget() {
+        inFlight.clear();
+    }
+
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+}
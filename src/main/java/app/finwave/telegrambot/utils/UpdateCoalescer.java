@@ -0,0 +1,123 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.telegrambot.config.CommonConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class UpdateCoalescer {
+    protected static final Logger log = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+    protected static ScheduledExecutorService executor;
+
+    protected CommonConfig.UpdatesConfig config;
+    protected Consumer<Set<UpdateScope>> action;
+
+    protected EnumSet<UpdateScope> pending = EnumSet.noneOf(UpdateScope.class);
+    protected long firstEventTime;
+    protected ScheduledFuture<?> scheduled;
+    protected boolean paused;
+    protected EnumSet<UpdateScope> deferred = EnumSet.noneOf(UpdateScope.class);
+
+    public UpdateCoalescer(CommonConfig.UpdatesConfig config, Consumer<Set<UpdateScope>> action) {
+        this.config = config;
+        this.action = action;
+
+        initExecutor(config.threads);
+    }
+
+    protected static synchronized void initExecutor(int threads) {
+        if (executor != null)
+            return;
+
+        executor = Executors.newScheduledThreadPool(threads, (r) -> {
+            Thread thread = new Thread(r, "update-coalescer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    public synchronized void push(Set<UpdateScope> scopes) {
+        if (paused) {
+            deferred.addAll(scopes);
+
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (pending.isEmpty())
+            firstEventTime = now;
+
+        pending.addAll(scopes);
+
+        if (scheduled != null)
+            scheduled.cancel(false);
+
+        // wait for the burst to go quiet, but never hold the first event longer than maxDelay
+        long delay = Math.min(config.quietWindow, firstEventTime + config.maxDelay - now);
+
+        scheduled = executor.schedule(this::fire, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    protected void fire() {
+        EnumSet<UpdateScope> scopes;
+
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+
+            scopes = pending;
+            pending = EnumSet.noneOf(UpdateScope.class);
+            scheduled = null;
+        }
+
+        try {
+            action.accept(scopes);
+        } catch (Exception e) {
+            log.warn("Failed to apply coalesced update {}", scopes, e);
+        }
+    }
+
+    // drops pending events and holds incoming ones back until resumed, the caller is expected to refresh everything itself
+    public synchronized void pause() {
+        cancel();
+
+        paused = true;
+    }
+
+    // events held back may postdate the caller's refresh, so they get one coalesced refresh of their own
+    public synchronized void resume() {
+        if (!paused)
+            return;
+
+        paused = false;
+
+        if (deferred.isEmpty())
+            return;
+
+        EnumSet<UpdateScope> scopes = deferred;
+        deferred = EnumSet.noneOf(UpdateScope.class);
+
+        push(scopes);
+    }
+
+    // forgets everything, including a pause nobody is going to resume anymore
+    public synchronized void cancel() {
+        if (scheduled != null)
+            scheduled.cancel(false);
+
+        scheduled = null;
+        pending = EnumSet.noneOf(UpdateScope.class);
+        deferred = EnumSet.noneOf(UpdateScope.class);
+        paused = false;
+    }
+}
@@ -0,0 +1,62 @@
+package app.finwave.telegrambot.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+public enum UpdateScope {
+    ACCOUNTS,
+    ACCOUNT_FOLDERS,
+    CURRENCIES,
+    CATEGORIES,
+    TRANSACTIONS,
+    NOTES;
+
+    // update types the server announces, older servers still call folders and categories tags
+    protected static final Map<String, EnumSet<UpdateScope>> TYPES = Map.of(
+            "accounts", EnumSet.of(ACCOUNTS),
+            "accountFolders", EnumSet.of(ACCOUNT_FOLDERS),
+            "accountTags", EnumSet.of(ACCOUNT_FOLDERS),
+            "currencies", EnumSet.of(CURRENCIES),
+            "transactionCategories", EnumSet.of(CATEGORIES),
+            "transactionTags", EnumSet.of(CATEGORIES),
+            "transactions", EnumSet.of(TRANSACTIONS, ACCOUNTS), // balances move with transactions
+            "notes", EnumSet.of(NOTES)
+    );
+
+    public static EnumSet<UpdateScope> all() {
+        return EnumSet.allOf(UpdateScope.class);
+    }
+
+    // anything that isn't exactly a known type refreshes everything, a too narrow refetch would show stale data
+    public static EnumSet<UpdateScope> classify(String payload) {
+        String type = typeOf(payload);
+        EnumSet<UpdateScope> scopes = type == null ? null : TYPES.get(type);
+
+        return scopes == null ? all() : EnumSet.copyOf(scopes);
+    }
+
+    // the payload is the bare type, or an object carrying it in its type field
+    protected static String typeOf(String payload) {
+        if (payload == null)
+            return null;
+
+        String trimmed = payload.strip();
+
+        if (!trimmed.startsWith("{"))
+            return trimmed;
+
+        try {
+            JsonObject object = JsonParser.parseString(trimmed).getAsJsonObject();
+            JsonElement type = object.get("type");
+
+            return type != null && type.isJsonPrimitive() && type.getAsJsonPrimitive().isString() ? type.getAsString() : null;
+        } catch (JsonParseException | IllegalStateException e) {
+            return null;
+        }
+    }
+}
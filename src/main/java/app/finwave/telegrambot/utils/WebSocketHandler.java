@@ -11,7 +11,6 @@ import org.java_websocket.handshake.ServerHandshake;
 
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 public class WebSocketHandler extends RoutedWebSocketHandler {
     protected MainScene mainScene;
@@ -29,14 +28,9 @@ public class WebSocketHandler extends RoutedWebSocketHandler {
 
     @Override
     public void notifyUpdate(String s) {
-        ChatHandler chatHandler = (ChatHandler) mainScene.getChatHandler();
-
-        try {
-            mainScene.updateState();
-        } catch (ExecutionException | InterruptedException ignored) {}
-
-        if (mainScene.equals(chatHandler.getActiveScene()))
-            mainScene.update();
+        // data changed on the server, so refreshes already in flight are outdated
+        mainScene.invalidateInFlight();
+        mainScene.pushServerUpdate(UpdateScope.classify(s));
     }
 
     @Override
@@ -59,7 +53,9 @@ public class WebSocketHandler extends RoutedWebSocketHandler {
 
     @Override
     public void notificationPointRegistered(long l, UUID uuid) {
-        preferenceDatabase.setNotificationUUID(mainScene.getChatHandler().getChatId(), uuid);
+        mainScene.setPreferencesRecord(
+                preferenceDatabase.setNotificationUUID(mainScene.getChatHandler().getChatId(), uuid)
+        );
 
         client.send(new SubscribeNotificationsRequest(uuid));
     }
@@ -0,0 +1,6 @@
+create table if not exists chat_leases
+(
+    partition_id    int primary key,
+    owner           text,
+    expires_at      timestamp with time zone not null
+);
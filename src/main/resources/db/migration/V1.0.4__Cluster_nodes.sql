@@ -0,0 +1,5 @@
+create table if not exists cluster_nodes
+(
+    node_id     varchar(255) primary key,
+    last_seen   timestamp with time zone not null
+);
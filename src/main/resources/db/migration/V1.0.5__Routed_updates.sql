@@ -0,0 +1,10 @@
+create table if not exists routed_updates
+(
+    id              bigserial primary key,
+    partition_id    int not null,
+    chat_id         bigint not null,
+    payload         text not null,
+    created_at      timestamp with time zone not null default now()
+);
+
+create index if not exists routed_updates_partition_idx on routed_updates (partition_id, id);
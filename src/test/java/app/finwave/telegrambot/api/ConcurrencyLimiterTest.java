@@ -0,0 +1,167 @@
+package app.finwave.telegrambot.api;
+
+import app.finwave.telegrambot.config.ApiConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+    protected ApiConfig.LimiterConfig config = new ApiConfig.LimiterConfig();
+    protected ArrayList<CompletableFuture<Integer>> calls = new ArrayList<>();
+
+    protected ConcurrencyLimiter limiter(int initialLimit) {
+        config.initialLimit = initialLimit;
+
+        return new ConcurrencyLimiter("test", config);
+    }
+
+    // every submitted call hands out a future the test completes by hand
+    protected CompletableFuture<Integer> submit(ConcurrencyLimiter limiter) {
+        return limiter.submit(() -> {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            calls.add(call);
+
+            return call;
+        });
+    }
+
+    @Test
+    public void queuesAboveLimit() throws Exception {
+        ConcurrencyLimiter limiter = limiter(2);
+
+        CompletableFuture<Integer> first = submit(limiter);
+        submit(limiter);
+        CompletableFuture<Integer> third = submit(limiter);
+
+        assertEquals(2, calls.size());
+        assertEquals(1, limiter.stats().queueSize());
+
+        calls.get(0).complete(1);
+
+        assertEquals(1, first.get());
+        assertEquals(3, calls.size());
+        assertEquals(0, limiter.stats().queueSize());
+
+        calls.get(2).complete(3);
+        assertEquals(3, third.get());
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() {
+        config.maxQueue = 1;
+        ConcurrencyLimiter limiter = limiter(1);
+
+        submit(limiter);
+        submit(limiter);
+        CompletableFuture<Integer> rejected = submit(limiter);
+
+        assertInstanceOf(RejectedExecutionException.class, assertThrows(ExecutionException.class, rejected::get).getCause());
+        assertEquals(1, limiter.stats().rejected());
+    }
+
+    @Test
+    public void queuedRequestExpires() {
+        config.queueTimeout = 50;
+        ConcurrencyLimiter limiter = limiter(1);
+
+        submit(limiter);
+        CompletableFuture<Integer> queued = submit(limiter);
+
+        assertInstanceOf(RejectedExecutionException.class, assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, limiter.stats().expired());
+
+        // the expired request never starts
+        calls.get(0).complete(1);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void cancelledWhileQueuedFreesItsPlace() {
+        config.maxQueue = 1;
+        ConcurrencyLimiter limiter = limiter(1);
+
+        submit(limiter);
+        submit(limiter).cancel(false);
+
+        assertEquals(0, limiter.stats().queueSize());
+        assertFalse(submit(limiter).isCompletedExceptionally());
+    }
+
+    @Test
+    public void overloadBacksOff() {
+        ConcurrencyLimiter limiter = limiter(8);
+
+        submit(limiter);
+        calls.get(0).completeExceptionally(new IOException("connection reset"));
+
+        assertEquals(4, limiter.stats().limit());
+        assertEquals(1, limiter.stats().overloads());
+    }
+
+    @Test
+    public void successGrowsLimitAdditively() {
+        ConcurrencyLimiter limiter = limiter(8);
+
+        for (int i = 0; i < 20; i++) {
+            submit(limiter);
+            calls.get(i).complete(i);
+        }
+
+        assertTrue(limiter.stats().limit() >= 9);
+        assertTrue(limiter.stats().limit() <= 10);
+    }
+
+    @Test
+    public void limitStaysWithinBounds() {
+        config.minLimit = 2;
+        config.maxLimit = 8;
+        ConcurrencyLimiter limiter = limiter(8);
+
+        for (int i = 0; i < 5; i++) {
+            submit(limiter);
+            calls.get(i).completeExceptionally(new IOException());
+        }
+
+        assertEquals(2, limiter.stats().limit());
+
+        for (int i = 5; i < 200; i++) {
+            submit(limiter);
+            calls.get(i).complete(i);
+        }
+
+        assertEquals(8, limiter.stats().limit());
+    }
+
+    @Test
+    public void callerCancellationIsNotOverload() {
+        ConcurrencyLimiter limiter = limiter(8);
+
+        CompletableFuture<Integer> result = submit(limiter);
+        result.cancel(true);
+
+        // the started request is cancelled for nobody, and the limit stays where it was
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(8, limiter.stats().limit());
+        assertEquals(0, limiter.stats().inFlight());
+        assertEquals(0, limiter.stats().overloads());
+    }
+
+    @Test
+    public void callerTimeoutIsOverload() {
+        ConcurrencyLimiter limiter = limiter(8);
+
+        CompletableFuture<Integer> result = submit(limiter).orTimeout(20, TimeUnit.MILLISECONDS);
+
+        assertThrows(ExecutionException.class, result::get);
+
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(4, limiter.stats().limit());
+    }
+}
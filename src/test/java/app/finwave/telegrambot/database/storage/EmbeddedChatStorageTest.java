@@ -0,0 +1,139 @@
+package app.finwave.telegrambot.database.storage;
+
+import app.finwave.telegrambot.jooq.tables.records.ChatsPreferencesRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static app.finwave.telegrambot.jooq.Tables.CHATS_PREFERENCES;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedChatStorageTest {
+    @TempDir
+    protected Path directory;
+
+    protected Path log() {
+        return directory.resolve("chats.log");
+    }
+
+    // three chats, the second with preferences and an updated last message, the third written last
+    protected void populate() throws IOException {
+        EmbeddedChatStorage storage = new EmbeddedChatStorage(log());
+
+        storage.registerChat(1, "https://one/", "s1", (short) 0, 10);
+        storage.registerChat(2, "https://two/", "s2", (short) 1, 20);
+        storage.createPreferences(2);
+        storage.updatePreferences(2, Map.of(CHATS_PREFERENCES.HIDE_AMOUNTS, true));
+        storage.updateLastMessages(Map.of(2L, 21));
+        storage.registerChat(3, "https://three/", "s3", (short) 0, 30);
+
+        storage.close();
+    }
+
+    // start offset of the last complete entry
+    protected static int lastEntry(ByteBuffer data) {
+        int position = 0;
+        int last = -1;
+
+        while (EmbeddedChatStorage.entryLength(data, position) >= 0) {
+            last = position;
+            position += EmbeddedChatStorage.HEADER_SIZE + EmbeddedChatStorage.entryLength(data, position);
+        }
+
+        return last;
+    }
+
+    protected void assertFirstTwoChats(EmbeddedChatStorage storage) {
+        assertEquals("https://one/", storage.getChat(1).orElseThrow().getApiUrl());
+        assertEquals(21, storage.getChat(2).orElseThrow().getLastMessage());
+
+        ChatsPreferencesRecord preferences = storage.getPreferences(2);
+        assertTrue(preferences.getHideAmounts());
+    }
+
+    @Test
+    public void replaysEverything() throws IOException {
+        populate();
+
+        try (EmbeddedChatStorage storage = new EmbeddedChatStorage(log())) {
+            assertFirstTwoChats(storage);
+            assertEquals(30, storage.getChat(3).orElseThrow().getLastMessage());
+            assertNull(storage.getPreferences(1));
+        }
+    }
+
+    @Test
+    public void recoversFromTruncatedTrailingEntry() throws IOException {
+        populate();
+
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int last = lastEntry(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            // the crash cut the file in the middle of the last entry's payload
+            channel.truncate(last + EmbeddedChatStorage.HEADER_SIZE + 5);
+        }
+
+        reopenWithoutThirdChat();
+    }
+
+    @Test
+    public void recoversFromTornTrailingEntry() throws IOException {
+        populate();
+
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int last = lastEntry(data);
+
+            // length and checksum reached the disk, the tail of the payload did not
+            int payloadEnd = last + EmbeddedChatStorage.HEADER_SIZE + data.getInt(last);
+
+            for (int i = payloadEnd - 4; i < payloadEnd; i++)
+                data.put(i, (byte) 0);
+
+            data.force();
+        }
+
+        reopenWithoutThirdChat();
+    }
+
+    protected void reopenWithoutThirdChat() throws IOException {
+        try (EmbeddedChatStorage storage = new EmbeddedChatStorage(log())) {
+            assertFirstTwoChats(storage);
+            assertTrue(storage.getChat(3).isEmpty());
+
+            // appends go after the last good entry, not after the torn one
+            storage.registerChat(4, "https://four/", "s4", (short) 0, 40);
+        }
+
+        try (EmbeddedChatStorage storage = new EmbeddedChatStorage(log())) {
+            assertFirstTwoChats(storage);
+            assertTrue(storage.getChat(3).isEmpty());
+            assertEquals(40, storage.getChat(4).orElseThrow().getLastMessage());
+        }
+    }
+
+    @Test
+    public void visitorStopsIteration() throws IOException {
+        populate();
+
+        try (EmbeddedChatStorage storage = new EmbeddedChatStorage(log())) {
+            ArrayList<Long> visited = new ArrayList<>();
+
+            storage.forEachChat((chat, preferences) -> {
+                visited.add(chat.getId());
+
+                return visited.size() < 2;
+            });
+
+            assertEquals(2, visited.size());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.TransactionApi;
+import app.finwave.telegrambot.config.CommonConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static app.finwave.telegrambot.utils.TestSnapshots.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActionParserTest {
+    protected ActionParser parser = new ActionParser(state(snapshot()), null);
+
+    protected TransactionApi.NewTransactionRequest parse(String message, long preferredAccountId) {
+        ActionParser.Result result = parser.parse(message, preferredAccountId);
+        assertNotNull(result);
+
+        return (TransactionApi.NewTransactionRequest) result.request();
+    }
+
+    @Test
+    public void preferredAccountWinsOverIncidentalGram() {
+        // "касса" shares only " ка" with "Тинькофф карта"
+        assertEquals(WALLET, parse("продукты касса 250", WALLET).accountId());
+    }
+
+    @Test
+    public void explicitNameDisplacesPreferredAccount() {
+        assertEquals(SBER, parse("продукты 250 сбер", WALLET).accountId());
+        assertEquals(TINKOFF, parse("такси 300 тинькофф карта", WALLET).accountId());
+    }
+
+    @Test
+    public void weakMatchWithoutPreferredAccount() {
+        assertEquals(TINKOFF, parse("продукты касса 250", -1).accountId());
+    }
+
+    protected ActionParser learnedParser() {
+        CategoryModel model = new CategoryModel(new CommonConfig.PredictionConfig());
+
+        for (int i = 0; i < 5; i++)
+            model.learn(List.of("кофе"), SBER, GROCERIES);
+
+        return new ActionParser(state(snapshot()), model);
+    }
+
+    @Test
+    public void explicitNameOverridesLearnedPair() {
+        TransactionApi.NewTransactionRequest request = (TransactionApi.NewTransactionRequest) learnedParser().parse("кофе 180 тинькофф карта", WALLET).request();
+
+        assertEquals(TINKOFF, request.accountId());
+        assertEquals(GROCERIES, request.categoryId());
+    }
+
+    @Test
+    public void weakNameKeepsLearnedPair() {
+        TransactionApi.NewTransactionRequest request = (TransactionApi.NewTransactionRequest) learnedParser().parse("кофе касса 180", WALLET).request();
+
+        assertEquals(SBER, request.accountId());
+        assertEquals(GROCERIES, request.categoryId());
+    }
+
+    @Test
+    public void onlySignGuessIsUncertain() {
+        ActionParser.Result guessed = parser.parse("непонятное 300", WALLET);
+
+        assertTrue(guessed.isGuess());
+        assertEquals(GROCERIES, ((TransactionApi.NewTransactionRequest) guessed.request()).categoryId());
+
+        // an abbreviated category name scores low but is still named
+        ActionParser.Result named = parser.parse("пр 300", WALLET);
+
+        assertFalse(named.isGuess());
+        assertTrue(named.confidence() < 0.15);
+        assertEquals(GROCERIES, ((TransactionApi.NewTransactionRequest) named.request()).categoryId());
+    }
+}
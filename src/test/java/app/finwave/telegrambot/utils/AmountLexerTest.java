@@ -0,0 +1,100 @@
+package app.finwave.telegrambot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AmountLexerTest {
+    protected static BigDecimal amountOf(String token) {
+        List<AmountLexer.Token> tokens = AmountLexer.tokenize(token);
+        assertEquals(1, tokens.size());
+
+        return tokens.get(0).amount();
+    }
+
+    protected static void assertAmount(String expected, String token) {
+        BigDecimal amount = amountOf(token);
+
+        assertNotNull(amount, token);
+        assertEquals(new BigDecimal(expected), amount, token);
+    }
+
+    @Test
+    public void plainAndDecimal() {
+        assertAmount("250", "250");
+        assertAmount("250.50", "250,50");
+        assertAmount("1.5", "1.5");
+        assertAmount("0.05", "0,05");
+        assertAmount("1.2345", "1,2345");
+    }
+
+    @Test
+    public void grouping() {
+        assertAmount("1000000", "1,000,000");
+        assertAmount("1000000", "1.000.000");
+        assertAmount("1234.56", "1.234,56");
+        assertAmount("1234.56", "1,234.56");
+        assertAmount("1000", "1'000");
+        assertAmount("1000", "1_000");
+        assertAmount("1000", "1 000");
+        assertAmount("1000", "1 000");
+    }
+
+    @Test
+    public void malformedNumbersAreWords() {
+        for (String word : List.of("1,00,000", "12,34,567", "1..2", "1,234.5.6", "1,234,5", "1_00", "_100", "1.000,00,0", "12abc", "ч3", "abc", "-", "+", ",", "1,000_00"))
+            assertNull(amountOf(word), word);
+    }
+
+    @Test
+    public void signs() {
+        AmountLexer.Token plus = AmountLexer.tokenize("+100").get(0);
+        AmountLexer.Token minus = AmountLexer.tokenize("-5,5").get(0);
+        AmountLexer.Token bare = AmountLexer.tokenize("7").get(0);
+
+        assertTrue(plus.signed());
+        assertEquals(new BigDecimal("100"), plus.amount());
+
+        assertTrue(minus.signed());
+        assertEquals(new BigDecimal("-5.5"), minus.amount());
+
+        assertFalse(bare.signed());
+    }
+
+    @Test
+    public void beyondLong() {
+        assertAmount("1234567890123456789012345.67", "1234567890123456789012345,67");
+        assertAmount("-99999999999999999999", "-99999999999999999999");
+    }
+
+    @Test
+    public void tokenPositions() {
+        List<AmountLexer.Token> tokens = AmountLexer.tokenize("  кофе\t250,50  сбер ");
+
+        assertEquals(3, tokens.size());
+
+        assertEquals(AmountLexer.Type.WORD, tokens.get(0).type());
+        assertEquals("кофе", tokens.get(0).text());
+        assertEquals(2, tokens.get(0).start());
+        assertEquals(6, tokens.get(0).end());
+
+        assertTrue(tokens.get(1).isAmount());
+        assertEquals(1, tokens.get(1).position());
+        assertEquals("250,50", tokens.get(1).text());
+
+        assertEquals("сбер", tokens.get(2).text());
+        assertEquals(2, tokens.get(2).position());
+    }
+
+    @Test
+    public void spaceSplitsAmounts() {
+        List<AmountLexer.Token> tokens = AmountLexer.tokenize("что-то 1 000");
+
+        assertEquals(new BigDecimal("1"), tokens.get(1).amount());
+        assertEquals(BigDecimal.ZERO, tokens.get(2).amount().stripTrailingZeros());
+        assertTrue(AmountLexer.tokenize("").isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.telegrambot.config.CommonConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static app.finwave.telegrambot.utils.TestSnapshots.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CategoryModelTest {
+    protected CommonConfig.PredictionConfig config = new CommonConfig.PredictionConfig();
+    protected ClientStateSnapshot snapshot = snapshot();
+
+    protected CategoryModel learned(int times) {
+        CategoryModel model = new CategoryModel(config);
+
+        for (int i = 0; i < times; i++)
+            model.learn(List.of("кофе", "утром"), SBER, GROCERIES);
+
+        return model;
+    }
+
+    @Test
+    public void predictsLearnedPair() {
+        CategoryModel.Prediction prediction = learned(3).predict(List.of("Кофе", "утром!"), -1, snapshot);
+
+        assertEquals(SBER, prediction.account().accountId());
+        assertEquals(GROCERIES, prediction.category().categoryId());
+
+        // six votes for the pair out of six, smoothed by one
+        assertEquals(6d / 7, prediction.confidence(), 1e-9);
+    }
+
+    @Test
+    public void unknownWordsLowerConfidence() {
+        CategoryModel model = learned(3);
+
+        assertEquals(6d / 8, model.predict(List.of("кофе", "утром", "вечером"), -1, snapshot).confidence(), 1e-9);
+        assertNull(model.predict(List.of("вечером"), -1, snapshot));
+    }
+
+    @Test
+    public void singleConfirmationIsNotConfident() {
+        CategoryModel model = new CategoryModel(config);
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+
+        assertFalse(model.isConfident(model.predict(List.of("кофе"), -1, snapshot)));
+        assertTrue(model.isConfident(learned(3).predict(List.of("кофе"), -1, snapshot)));
+    }
+
+    @Test
+    public void skipsOtherDirectionAndDeletedEntries() {
+        CategoryModel model = learned(3);
+
+        assertNull(model.predict(List.of("кофе"), 1, snapshot));
+        assertNull(model.predict(List.of("кофе"), -1, snapshot.withAccounts(
+                snapshot.getAccounts().stream().filter((a) -> a.accountId() != SBER).toList()
+        )));
+    }
+
+    @Test
+    public void decayHalvesCounts() {
+        CategoryModel model = new CategoryModel(config);
+
+        for (int i = 0; i < CategoryModel.DECAY_AT - 1; i++)
+            model.learn(List.of("кофе"), SBER, GROCERIES);
+
+        model.learn(List.of("кофе"), WALLET, TAXI);
+
+        CategoryModel.Votes votes = model.words.get("кофе");
+        assertEquals(CategoryModel.DECAY_AT - 1, votes.counts[0]);
+        assertEquals(CategoryModel.DECAY_AT, votes.total);
+
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+
+        // the pair that reached the limit is halved, a single vote never drops to zero
+        assertEquals(CategoryModel.DECAY_AT / 2, votes.counts[0]);
+        assertEquals(1, votes.counts[1]);
+        assertEquals(CategoryModel.DECAY_AT / 2 + 1, votes.total);
+    }
+
+    @Test
+    public void evictsRarestWord() {
+        config.maxWords = 2;
+        CategoryModel model = new CategoryModel(config);
+
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+        model.learn(List.of("чай"), SBER, GROCERIES);
+        model.learn(List.of("сок"), SBER, GROCERIES);
+
+        assertEquals(2, model.size());
+        assertEquals(List.of("кофе", "сок"), model.words.keySet().stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void evictsRarestPairOfWord() {
+        config.maxCandidates = 2;
+        CategoryModel model = new CategoryModel(config);
+
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+        model.learn(List.of("кофе"), SBER, GROCERIES);
+        model.learn(List.of("кофе"), WALLET, TAXI);
+        model.learn(List.of("кофе"), TINKOFF, GROCERIES);
+
+        CategoryModel.Votes votes = model.words.get("кофе");
+
+        assertEquals(2, votes.size);
+        assertEquals(TINKOFF, votes.accounts[1]);
+        assertEquals(1, votes.counts[1]);
+        assertEquals(3, votes.total);
+    }
+
+    @Test
+    public void nameOverrideThreshold() {
+        CategoryModel model = new CategoryModel(config);
+
+        assertTrue(model.isOverriddenBy(config.nameOverride));
+        assertFalse(model.isOverriddenBy(config.nameOverride - 0.01));
+    }
+}
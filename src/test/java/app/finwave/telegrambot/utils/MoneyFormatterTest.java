@@ -0,0 +1,101 @@
+package app.finwave.telegrambot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyFormatterTest {
+    protected static final DecimalFormatSymbols SYMBOLS = DecimalFormatSymbols.getInstance();
+
+    // the grouping and decimal separators are the default locale's, like in the bot
+    protected static String expected(String plain) {
+        return plain
+                .replace(',', '\u0000')
+                .replace('.', SYMBOLS.getDecimalSeparator())
+                .replace('\u0000', SYMBOLS.getGroupingSeparator())
+                .replace('-', SYMBOLS.getMinusSign());
+    }
+
+    protected static String format(String amount, int decimals) {
+        return new MoneyFormatter(decimals, "").format(new BigDecimal(amount), false);
+    }
+
+    @Test
+    public void roundsHalfUpToCurrencyScale() {
+        assertEquals(expected("1.01"), format("1.005", 2));
+        assertEquals(expected("-1.01"), format("-1.005", 2));
+        assertEquals(expected("3"), format("2.5", 0));
+        assertEquals(expected("1.02"), format("1.015", 2));
+    }
+
+    @Test
+    public void capsAtThreeDigitsHalfEven() {
+        assertEquals(expected("2"), format("2.0005", 6));
+        assertEquals(expected("2.002"), format("2.0015", 6));
+        assertEquals(expected("12.346"), format("12.3455", 6));
+
+        // HALF_UP to the currency scale comes first, at six decimals this is 2.000500 and then rounds to even
+        assertEquals(expected("2"), format("2.0005001", 6));
+        assertEquals(expected("2.001"), format("2.0005001", 8));
+    }
+
+    @Test
+    public void stripsTrailingZerosAndGroups() {
+        assertEquals(expected("1,234,567.8"), format("1234567.80", 2));
+        assertEquals(expected("1,000"), format("1000.00", 2));
+        assertEquals(expected("0.05"), format("0.05", 2));
+        assertEquals(expected("100"), format("1E+2", 2));
+    }
+
+    @Test
+    public void noNegativeZero() {
+        assertEquals(expected("0"), format("-0.004", 2));
+        assertEquals(expected("0"), format("-0.0004", 6));
+    }
+
+    @Test
+    public void exactPastDoublePrecision() {
+        // 2^53 + 1 has no double
+        assertEquals(expected("9,007,199,254,740,993"), format("9007199254740993", 2));
+        assertEquals(expected("-9,007,199,254,740,993.01"), format("-9007199254740993.01", 2));
+        assertEquals(expected("123,456,789,012,345,678.12"), format("123456789012345678.12", 2));
+        assertEquals(expected("98,765,432,109,876,543,210.45"), format("98765432109876543210.4500", 6));
+    }
+
+    @Test
+    public void plusOnlyForPositive() {
+        MoneyFormatter formatter = new MoneyFormatter(2, " ₽");
+
+        assertEquals(expected("+12.5") + " ₽", formatter.format(new BigDecimal("12.50"), true));
+        assertEquals(expected("-12.5") + " ₽", formatter.format(new BigDecimal("-12.50"), true));
+        assertEquals(expected("0") + " ₽", formatter.format(BigDecimal.ZERO, true));
+    }
+
+    // DecimalFormat formats a BigDecimal exactly, with its default three fraction digits rounded HALF_EVEN
+    @Test
+    public void matchesDecimalFormat() {
+        Random random = new Random(42);
+        DecimalFormat decimalFormat = new DecimalFormat();
+
+        for (int decimals = 0; decimals <= 8; decimals++) {
+            MoneyFormatter formatter = new MoneyFormatter(decimals, "");
+
+            for (int i = 0; i < 2000; i++) {
+                BigDecimal amount = BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(10));
+                BigDecimal rounded = amount.setScale(decimals, RoundingMode.HALF_UP);
+
+                // DecimalFormat keeps the sign of negatives that round to zero, see noNegativeZero
+                if (rounded.signum() < 0 && rounded.setScale(Math.min(decimals, 3), RoundingMode.HALF_EVEN).signum() == 0)
+                    continue;
+
+                assertEquals(decimalFormat.format(rounded), formatter.format(amount, false), amount + " at " + decimals);
+            }
+        }
+    }
+}
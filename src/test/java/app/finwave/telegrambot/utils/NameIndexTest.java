@@ -0,0 +1,76 @@
+package app.finwave.telegrambot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NameIndexTest {
+    protected NameIndex<String> index = new NameIndex<>(List.of("Сбер", "Тинькофф карта", "Кошелек"), Function.identity());
+
+    protected HashMap<String, Double> score(List<String> words, int center) {
+        HashMap<String, Double> scores = new HashMap<>();
+
+        index.score(words, center, (wordCount) -> wordCount, (entry, position, score) -> {
+            assertEquals(entry, index.getEntries().get(position));
+            assertNull(scores.put(entry, score), entry);
+        });
+
+        return scores;
+    }
+
+    @Test
+    public void grams() {
+        assertEquals(Set.of(" сб", "сбе", "бер", "ер "), NameIndex.gramsOf("СБЕР"));
+        assertEquals(Set.of(" a "), NameIndex.gramsOf(" a  "));
+        assertTrue(NameIndex.gramsOf("").isEmpty());
+    }
+
+    @Test
+    public void wordCounts() {
+        assertEquals(1, index.getWordCount(0));
+        assertEquals(2, index.getWordCount(1));
+    }
+
+    @Test
+    public void exactNameScoresOne() {
+        assertEquals(1.0, score(List.of("Сбер"), 0).get("Сбер"), 1e-9);
+        assertEquals(1.0, score(List.of("тинькофф", "карта"), 1).get("Тинькофф карта"), 1e-9);
+    }
+
+    @Test
+    public void scoresOnlyEntriesSharingGrams() {
+        HashMap<String, Double> scores = score(List.of("сбер"), 0);
+
+        assertEquals(Set.of("Сбер"), scores.keySet());
+    }
+
+    @Test
+    public void jaccardOfWindow() {
+        // " ка" is the only gram "касса" shares with "Тинькофф карта"
+        HashMap<String, Double> scores = score(List.of("касса"), 0);
+
+        assertEquals(Set.of("Тинькофф карта"), scores.keySet());
+        assertEquals(1.0 / (NameIndex.gramsOf("касса").size() + NameIndex.gramsOf("Тинькофф карта").size() - 1), scores.get("Тинькофф карта"), 1e-9);
+    }
+
+    @Test
+    public void wordsOutsideWindowAreIgnored() {
+        // a one word name looks one word around the center, "сбер" is three words away
+        assertTrue(score(List.of("сбер", "один", "два", "три"), 3).isEmpty());
+        assertFalse(score(List.of("сбер", "один", "два", "три"), 2).containsKey("Сбер"));
+        assertTrue(score(List.of("сбер", "один", "два", "три"), 1).containsKey("Сбер"));
+    }
+
+    @Test
+    public void emptyIndex() {
+        NameIndex<String> empty = new NameIndex<>(List.of(), Function.identity());
+
+        empty.score(List.of("сбер"), 0, (wordCount) -> wordCount, (entry, position, score) -> fail());
+        assertTrue(empty.getEntries().isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package app.finwave.telegrambot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    protected SingleFlight<String> flights = new SingleFlight<>();
+    protected AtomicInteger calls = new AtomicInteger();
+
+    protected CompletableFuture<Integer> call(CompletableFuture<Integer> result) {
+        calls.incrementAndGet();
+
+        return result;
+    }
+
+    @Test
+    public void joinsCallsWithSameKey() throws Exception {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        CompletableFuture<Integer> first = flights.run("a", () -> call(result));
+        CompletableFuture<Integer> second = flights.run("a", () -> call(new CompletableFuture<>()));
+        CompletableFuture<Integer> other = flights.run("b", () -> call(CompletableFuture.completedFuture(2)));
+
+        assertEquals(2, calls.get());
+        assertSame(first, second);
+        assertEquals(2, other.get());
+
+        result.complete(1);
+
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+    }
+
+    @Test
+    public void keyIsFreedBeforeJoinersAreNotified() throws Exception {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlightOnCompletion = flights.run("a", () -> call(result))
+                .thenApply((r) -> flights.isInFlight("a"));
+
+        assertTrue(flights.isInFlight("a"));
+        result.complete(1);
+
+        assertFalse(inFlightOnCompletion.get());
+
+        flights.run("a", () -> call(CompletableFuture.completedFuture(2)));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failuresPropagateAndFreeTheKey() {
+        CompletableFuture<Integer> failed = flights.run("a", () -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        CompletableFuture<Integer> thrown = flights.run("b", () -> {
+            throw new IllegalArgumentException("thrown");
+        });
+
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, failed::get).getCause());
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, thrown::get).getCause());
+
+        assertFalse(flights.isInFlight("a"));
+        assertFalse(flights.isInFlight("b"));
+    }
+
+    @Test
+    public void forgetStartsNewFlights() throws Exception {
+        CompletableFuture<Integer> old = new CompletableFuture<>();
+        CompletableFuture<Integer> waiting = flights.run("a", () -> call(old));
+
+        flights.forget();
+
+        CompletableFuture<Integer> fresh = flights.run("a", () -> call(CompletableFuture.completedFuture(2)));
+        assertEquals(2, calls.get());
+        assertEquals(2, fresh.get());
+
+        // the old flight completing must not free the new one's key or change its result
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        CompletableFuture<Integer> newer = flights.run("a", () -> call(pending));
+
+        old.complete(1);
+
+        assertEquals(1, waiting.get());
+        assertTrue(flights.isInFlight("a"));
+
+        pending.complete(3);
+        assertEquals(3, newer.get());
+    }
+}
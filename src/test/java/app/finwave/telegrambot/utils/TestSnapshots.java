@@ -0,0 +1,44 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.api.AccountApi;
+import app.finwave.api.AccountFolderApi;
+import app.finwave.api.CurrencyApi;
+import app.finwave.api.TransactionCategoryApi;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// a small chat: three accounts in one folder, two expense categories and one income category
+public class TestSnapshots {
+    public static final long WALLET = 1;
+    public static final long TINKOFF = 2;
+    public static final long SBER = 3;
+
+    public static final long GROCERIES = 1;
+    public static final long TAXI = 2;
+    public static final long SALARY = 3;
+
+    public static ClientStateSnapshot snapshot() {
+        return ClientStateSnapshot.of(
+                List.of(new AccountFolderApi.FolderEntry(1, 1, "Банк", null)),
+                List.of(
+                        new AccountApi.AccountEntry(WALLET, 1, 1, 1, BigDecimal.ZERO, false, "Кошелек", null),
+                        new AccountApi.AccountEntry(TINKOFF, 1, 1, 1, BigDecimal.ZERO, false, "Тинькофф карта", null),
+                        new AccountApi.AccountEntry(SBER, 1, 1, 1, BigDecimal.ZERO, false, "Сбер", null)
+                ),
+                List.of(
+                        new TransactionCategoryApi.CategoryEntry(GROCERIES, 1, (short) -1, null, "Продукты", null),
+                        new TransactionCategoryApi.CategoryEntry(TAXI, 1, (short) -1, null, "Такси", null),
+                        new TransactionCategoryApi.CategoryEntry(SALARY, 1, (short) 1, null, "Зарплата", null)
+                ),
+                List.of(new CurrencyApi.CurrencyEntry(1, 1, "RUB", "₽", (short) 2, null))
+        );
+    }
+
+    public static ClientState state(ClientStateSnapshot snapshot) {
+        ClientState state = new ClientState() {};
+        state.restore(snapshot);
+
+        return state;
+    }
+}
@@ -0,0 +1,69 @@
+package app.finwave.telegrambot.utils;
+
+import app.finwave.telegrambot.config.CommonConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpdateCoalescerTest {
+    protected LinkedBlockingQueue<Set<UpdateScope>> fired = new LinkedBlockingQueue<>();
+    protected UpdateCoalescer coalescer;
+
+    public UpdateCoalescerTest() {
+        CommonConfig.UpdatesConfig config = new CommonConfig.UpdatesConfig();
+        config.quietWindow = 20;
+        config.maxDelay = 100;
+
+        coalescer = new UpdateCoalescer(config, fired::add);
+    }
+
+    @Test
+    public void coalescesBurst() throws InterruptedException {
+        coalescer.push(EnumSet.of(UpdateScope.ACCOUNTS));
+        coalescer.push(EnumSet.of(UpdateScope.NOTES));
+
+        assertEquals(EnumSet.of(UpdateScope.ACCOUNTS, UpdateScope.NOTES), fired.poll(1, TimeUnit.SECONDS));
+        assertNull(fired.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pauseDefersUntilResume() throws InterruptedException {
+        coalescer.push(EnumSet.of(UpdateScope.ACCOUNTS));
+        coalescer.pause();
+
+        coalescer.push(EnumSet.of(UpdateScope.TRANSACTIONS));
+        coalescer.push(EnumSet.of(UpdateScope.NOTES));
+
+        // pending events are dropped, the caller refreshes everything itself
+        assertNull(fired.poll(100, TimeUnit.MILLISECONDS));
+
+        coalescer.resume();
+
+        assertEquals(EnumSet.of(UpdateScope.TRANSACTIONS, UpdateScope.NOTES), fired.poll(1, TimeUnit.SECONDS));
+        assertNull(fired.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void resumeWithoutEventsDoesNothing() throws InterruptedException {
+        coalescer.pause();
+        coalescer.resume();
+
+        assertNull(fired.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelLiftsPause() throws InterruptedException {
+        coalescer.pause();
+        coalescer.push(EnumSet.of(UpdateScope.NOTES));
+        coalescer.cancel();
+
+        coalescer.push(EnumSet.of(UpdateScope.ACCOUNTS));
+
+        assertEquals(EnumSet.of(UpdateScope.ACCOUNTS), fired.poll(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,48 @@
+package app.finwave.telegrambot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static app.finwave.telegrambot.utils.UpdateScope.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpdateScopeTest {
+    @Test
+    public void bareTypes() {
+        assertEquals(EnumSet.of(ACCOUNTS), classify("accounts"));
+        assertEquals(EnumSet.of(ACCOUNT_FOLDERS), classify("accountFolders"));
+        assertEquals(EnumSet.of(ACCOUNT_FOLDERS), classify("accountTags"));
+        assertEquals(EnumSet.of(CURRENCIES), classify("currencies"));
+        assertEquals(EnumSet.of(CATEGORIES), classify("transactionCategories"));
+        assertEquals(EnumSet.of(CATEGORIES), classify("transactionTags"));
+        assertEquals(EnumSet.of(TRANSACTIONS, ACCOUNTS), classify("transactions"));
+        assertEquals(EnumSet.of(NOTES), classify(" notes\n"));
+    }
+
+    @Test
+    public void typeField() {
+        assertEquals(EnumSet.of(NOTES), classify("{\"type\":\"notes\",\"text\":\"pay the account fee\"}"));
+        assertEquals(EnumSet.of(TRANSACTIONS, ACCOUNTS), classify("{\"type\": \"transactions\", \"id\": 12}"));
+    }
+
+    @Test
+    public void unknownRefreshesEverything() {
+        assertEquals(all(), classify(null));
+        assertEquals(all(), classify(""));
+        assertEquals(all(), classify("recurringTransactions"));
+        assertEquals(all(), classify("new account created"));
+        assertEquals(all(), classify("Accounts"));
+        assertEquals(all(), classify("{\"text\":\"accounts\"}"));
+        assertEquals(all(), classify("{\"type\":{\"name\":\"accounts\"}}"));
+        assertEquals(all(), classify("{\"type\":\"accounts\""));
+        assertEquals(all(), classify("[\"accounts\"]"));
+    }
+
+    @Test
+    public void resultIsACopy() {
+        classify("accounts").add(NOTES);
+
+        assertEquals(EnumSet.of(ACCOUNTS), classify("accounts"));
+    }
+}